@@ -0,0 +1,96 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD implementation of SumKernel using the incubating Vector API. Each sum
+ * is kept in its own vector of partial sums, one per lane, which are only
+ * added together once the block is done. The remaining points that do not
+ * fill a whole vector are handled with scalar code.
+ *
+ * This class must be compiled and run with --add-modules
+ * jdk.incubator.vector, so it is kept in its own source root, src-vector, and
+ * the rest of the tree builds without the module. Build it as an extra step,
+ * after the main sources, onto the same class path:
+ *
+ * javac --add-modules jdk.incubator.vector -cp bin -d bin
+ * src-vector/VectorSumKernel.java
+ *
+ * It is only ever loaded through SumKernel.Selector, which falls back to
+ * ScalarSumKernel when the class or the module is missing.
+ */
+public class VectorSumKernel implements SumKernel {
+
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	private final ScalarSumKernel tail = new ScalarSumKernel();
+
+	@Override
+	public void sums(double[] x, double[] y, double[] w, int from, int to,
+			double x0, double y0, double[] out) {
+
+		DoubleVector zero = DoubleVector.zero(SPECIES);
+		DoubleVector shiftx = DoubleVector.broadcast(SPECIES, x0);
+		DoubleVector shifty = DoubleVector.broadcast(SPECIES, y0);
+
+		DoubleVector dxsum = zero, dysum = zero, dxxsum = zero, dyysum = zero;
+		DoubleVector wsum = zero, wdxsum = zero, wdysum = zero, wdxxsum = zero;
+		DoubleVector wdxysum = zero;
+
+		int lanes = SPECIES.length();
+		int i = from;
+		int bound = from + (((to - from) / lanes) * lanes);
+
+		if (w == null) {
+			for (; i < bound; i += lanes) {
+				DoubleVector dx = DoubleVector.fromArray(SPECIES, x, i).sub(shiftx);
+				DoubleVector dy = DoubleVector.fromArray(SPECIES, y, i).sub(shifty);
+
+				dxsum = dxsum.add(dx);
+				dysum = dysum.add(dy);
+				dxxsum = dx.fma(dx, dxxsum);
+				dyysum = dy.fma(dy, dyysum);
+				wdxysum = dx.fma(dy, wdxysum);
+			}
+		} else {
+			for (; i < bound; i += lanes) {
+				DoubleVector dx = DoubleVector.fromArray(SPECIES, x, i).sub(shiftx);
+				DoubleVector dy = DoubleVector.fromArray(SPECIES, y, i).sub(shifty);
+				DoubleVector wi = DoubleVector.fromArray(SPECIES, w, i);
+				DoubleVector wdx = wi.mul(dx);
+
+				dxsum = dxsum.add(dx);
+				dysum = dysum.add(dy);
+				dxxsum = dx.fma(dx, dxxsum);
+				dyysum = dy.fma(dy, dyysum);
+				wsum = wsum.add(wi);
+				wdxsum = wdxsum.add(wdx);
+				wdysum = wi.fma(dy, wdysum);
+				wdxxsum = wdx.fma(dx, wdxxsum);
+				wdxysum = wdx.fma(dy, wdxysum);
+			}
+		}
+
+		// Handle the tail of the block with the scalar kernel, then fold in the
+		// lane sums.
+		tail.sums(x, y, w, i, to, x0, y0, out);
+
+		out[DX] += dxsum.reduceLanes(VectorOperators.ADD);
+		out[DY] += dysum.reduceLanes(VectorOperators.ADD);
+		out[DXX] += dxxsum.reduceLanes(VectorOperators.ADD);
+		out[DYY] += dyysum.reduceLanes(VectorOperators.ADD);
+		out[WDXY] += wdxysum.reduceLanes(VectorOperators.ADD);
+
+		if (w == null) {
+			out[W] += bound - from;
+			out[WDX] += dxsum.reduceLanes(VectorOperators.ADD);
+			out[WDY] += dysum.reduceLanes(VectorOperators.ADD);
+			out[WDXX] += dxxsum.reduceLanes(VectorOperators.ADD);
+		} else {
+			out[W] += wsum.reduceLanes(VectorOperators.ADD);
+			out[WDX] += wdxsum.reduceLanes(VectorOperators.ADD);
+			out[WDY] += wdysum.reduceLanes(VectorOperators.ADD);
+			out[WDXX] += wdxxsum.reduceLanes(VectorOperators.ADD);
+		}
+	}
+}
@@ -0,0 +1,90 @@
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fork/join task that accumulates the sample statistics of a range of a
+ * dataset. The range is split in half until it is no larger than the leaf
+ * size, each leaf is accumulated sequentially, and the partial accumulators
+ * are merged on the way back up. Each leaf is reported to the monitor of the
+ * fit, if it has one.
+ */
+public class AccumulateTask extends RecursiveTask<StatsAccumulator> {
+
+	private static final long serialVersionUID = 1L;
+
+	private final double[] x, y, w;
+	private final int from, to;
+	private final int leafSize;
+	private final FitMonitor monitor;
+
+	/**
+	 * @param x
+	 *          Array of predictor values.
+	 * @param y
+	 *          Array of response values.
+	 * @param w
+	 *          Array of weights, or null to weight every point with unity.
+	 * @param from
+	 *          First index of the range (inclusive).
+	 * @param to
+	 *          Last index of the range (exclusive).
+	 * @param leafSize
+	 *          Largest range accumulated without splitting further.
+	 */
+	public AccumulateTask(double[] x, double[] y, double[] w, int from, int to,
+			int leafSize) {
+		this(x, y, w, from, to, leafSize, null);
+	}
+
+	/**
+	 * @param x
+	 *          Array of predictor values.
+	 * @param y
+	 *          Array of response values.
+	 * @param w
+	 *          Array of weights, or null to weight every point with unity.
+	 * @param from
+	 *          First index of the range (inclusive).
+	 * @param to
+	 *          Last index of the range (exclusive).
+	 * @param leafSize
+	 *          Largest range accumulated without splitting further.
+	 * @param monitor
+	 *          Monitor of the fit, or null.
+	 */
+	public AccumulateTask(double[] x, double[] y, double[] w, int from, int to,
+			int leafSize, FitMonitor monitor) {
+		this.x = x;
+		this.y = y;
+		this.w = w;
+		this.from = from;
+		this.to = to;
+		this.leafSize = leafSize;
+		this.monitor = monitor;
+	}
+
+	@Override
+	protected StatsAccumulator compute() {
+		if (to - from <= leafSize) {
+			StatsAccumulator accumulator = new StatsAccumulator();
+			accumulator.add(x, y, w, from, to);
+			if (monitor != null) {
+				monitor.advance(to - from);
+			}
+			return accumulator;
+		}
+
+		int mid = (from + to) >>> 1;
+		AccumulateTask left = new AccumulateTask(x, y, w, from, mid, leafSize,
+				monitor);
+		AccumulateTask right = new AccumulateTask(x, y, w, mid, to, leafSize,
+				monitor);
+
+		// Run the left half asynchronously while this thread takes the right
+		left.fork();
+		StatsAccumulator result = right.compute();
+		StatsAccumulator leftResult = left.join();
+
+		leftResult.merge(result);
+		return leftResult;
+	}
+}
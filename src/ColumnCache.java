@@ -0,0 +1,412 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Description: Keeps a binary copy of every file read, so that later reads of
+ * the same file skip parsing it. Wraps another DataReader: the first read of a
+ * file goes through that reader and writes a cache file, and later reads load
+ * the cache file instead, as long as the source file has the same path, size
+ * and modification time.
+ *
+ * Cache files are little-endian throughout:
+ *
+ * header: magic, version, header length (ints), source size and modification
+ * time in milliseconds (longs), source path (int length, UTF-8 bytes)
+ * titles: count, then for each its column, length and UTF-8 bytes (ints, bytes)
+ * rows: for x, y and weights, the value count and the row bitmap (int count,
+ * int words, longs), padded with zeros to a multiple of 8 bytes
+ * columns: the x, y and weight values (doubles)
+ *
+ * The columns are loaded by memory-mapping the file and copying each column
+ * in bulk into its array, so a load costs little more than the read of the
+ * bytes themselves. With map() they are not copied at all, and are fitted
+ * from the mapping by OffHeapRegression.
+ */
+public class ColumnCache implements DataReader {
+
+	private static final int MAGIC = 0x4C524343; // "LRCC"
+	private static final int VERSION = 1;
+	private static final String SUFFIX = ".lrc";
+
+	private static final int COLUMNS = 3;
+
+	// Longest part of a column mapped at once
+	private static final int SEGMENT_SIZE = 1 << 30;
+
+	// Size of the buffer columns are written through
+	private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+	private final DataReader reader;
+	private final File directory;
+
+	/**
+	 * Cache kept in the linreg-cache folder of the temporary directory.
+	 *
+	 * @param reader
+	 *          Reader for files not yet in the cache.
+	 */
+	public ColumnCache(DataReader reader) {
+		this(reader, new File(System.getProperty("java.io.tmpdir"),
+				"linreg-cache"));
+	}
+
+	/**
+	 * @param reader
+	 *          Reader for files not yet in the cache.
+	 * @param directory
+	 *          Folder to keep cache files in. Created if missing.
+	 */
+	public ColumnCache(DataReader reader, File directory) {
+		this.reader = reader;
+		this.directory = directory;
+	}
+
+	/**
+	 * Loads a file from the cache if it is there and up to date, and otherwise
+	 * reads it and adds it to the cache. Failing to write the cache file does
+	 * not fail the read.
+	 */
+	@Override
+	public ColumnDataset run(String fileName) throws IOException {
+		Path source = new File(fileName).getAbsoluteFile().toPath();
+		long size = Files.size(source);
+		long modified = Files.getLastModifiedTime(source).toMillis();
+
+		File cacheFile = cacheFile(source);
+		if (cacheFile.isFile()) {
+			ColumnDataset data = load(cacheFile, source, size, modified);
+			if (data != null) {
+				return data;
+			}
+		}
+
+		ColumnDataset data = reader.run(fileName);
+
+		try {
+			store(cacheFile, source, size, modified, data);
+		} catch (IOException e) {
+			// The cache only saves time; the data read is still good, and the
+			// next read of the file simply tries to store it again
+		}
+
+		return data;
+	}
+
+	/**
+	 * @return Cache file for a source file. Files with the same name in
+	 *         different folders get different cache files.
+	 */
+	File cacheFile(Path source) {
+		String name = source.getFileName().toString();
+		String key = Integer.toHexString(source.toString().hashCode());
+		return new File(directory, name + "-" + key + SUFFIX);
+	}
+
+	/**
+	 * Maps the columns of a file into memory without loading them onto the
+	 * heap. If the file is not yet in the cache it is read and added first.
+	 * Weights are included only if every x-y pair has one.
+	 *
+	 * @param fileName
+	 *          name of the file to map
+	 * @return Dataset over the mapped cache file
+	 * @throws IOException
+	 *           If the file cannot be read, or its cache file cannot be written
+	 * @throws DataException
+	 *           If the file is not in the expected format, or does not hold at
+	 *           least two complete x-y pairs
+	 */
+	public OffHeapDataset map(String fileName) throws IOException {
+		Path source = new File(fileName).getAbsoluteFile().toPath();
+		long size = Files.size(source);
+		long modified = Files.getLastModifiedTime(source).toMillis();
+
+		File cacheFile = cacheFile(source);
+		OffHeapDataset data = null;
+		if (cacheFile.isFile()) {
+			data = map(cacheFile, source, size, modified);
+		}
+
+		if (data == null) {
+			store(cacheFile, source, size, modified, reader.run(fileName));
+			data = map(cacheFile, source, size, modified);
+			if (data == null) {
+				throw new IOException("Cannot map cache file " + cacheFile);
+			}
+		}
+
+		return data;
+	}
+
+	/**
+	 * @return Dataset from the cache file, or null if it is not the cache of
+	 *         the given version of the source file.
+	 */
+	private ColumnDataset load(File cacheFile, Path source, long size,
+			long modified) throws IOException {
+
+		try (FileChannel channel = FileChannel.open(cacheFile.toPath(),
+				StandardOpenOption.READ)) {
+
+			Header header = readHeader(channel, source, size, modified);
+			if (header == null) {
+				return null;
+			}
+
+			DoubleColumn[] columns = new DoubleColumn[COLUMNS];
+			long position = header.length;
+			for (int column = 0; column < COLUMNS; column++) {
+				double[] values = new double[header.counts[column]];
+				readDoubles(channel, position, values);
+				position += 8L * values.length;
+				columns[column] = new DoubleColumn(values, header.rowBits[column]);
+			}
+
+			ColumnDataset data = new ColumnDataset(columns[0], columns[1],
+					columns[2]);
+			for (int i = 0; i < header.titleColumns.length; i++) {
+				data.setTitle(header.titleColumns[i], header.titles[i]);
+			}
+
+			return data;
+		} catch (RuntimeException e) {
+			// A damaged cache file is read again from the source
+			return null;
+		}
+	}
+
+	/**
+	 * @return Mapped dataset over the cache file, or null if it is not the
+	 *         cache of the given version of the source file.
+	 */
+	private OffHeapDataset map(File cacheFile, Path source, long size,
+			long modified) throws IOException {
+
+		try (FileChannel channel = FileChannel.open(cacheFile.toPath(),
+				StandardOpenOption.READ)) {
+
+			Header header = readHeader(channel, source, size, modified);
+			if (header == null) {
+				return null;
+			}
+
+			int[] counts = header.counts;
+			long xOffset = header.length;
+			long yOffset = xOffset + (8L * counts[0]);
+			long wOffset = yOffset + (8L * counts[1]);
+
+			boolean weighted = counts[2] == counts[0]
+					&& Arrays.equals(header.rowBits[2], header.rowBits[0]);
+
+			return OffHeapDataset.map(channel, xOffset, yOffset,
+					weighted ? wOffset : -1, counts[0]);
+		} catch (RuntimeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Reads the header of a cache file.
+	 *
+	 * @return The header, or null if the file is not the cache of the given
+	 *         version of the source file, or is cut short.
+	 */
+	private static Header readHeader(FileChannel channel, Path source,
+			long size, long modified) throws IOException {
+
+		// magic, version and header length
+		int prefix = 12;
+		if (channel.size() < prefix) {
+			return null;
+		}
+		ByteBuffer buffer = read(channel, 0, prefix);
+		if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+			return null;
+		}
+		int headerLength = buffer.getInt();
+		if (headerLength < prefix || headerLength > channel.size()) {
+			return null;
+		}
+
+		ByteBuffer bytes = read(channel, prefix, headerLength - prefix);
+		if (bytes.getLong() != size || bytes.getLong() != modified
+				|| !source.toString().equals(getString(bytes))) {
+			return null;
+		}
+
+		Header header = new Header();
+		header.length = headerLength;
+
+		int titles = bytes.getInt();
+		header.titles = new String[titles];
+		header.titleColumns = new int[titles];
+		for (int i = 0; i < titles; i++) {
+			header.titleColumns[i] = bytes.getInt();
+			header.titles[i] = getString(bytes);
+		}
+
+		long expected = headerLength;
+		for (int column = 0; column < COLUMNS; column++) {
+			header.counts[column] = bytes.getInt();
+			header.rowBits[column] = new long[bytes.getInt()];
+			bytes.asLongBuffer().get(header.rowBits[column]);
+			bytes.position(bytes.position() + (8 * header.rowBits[column].length));
+			expected += 8L * header.counts[column];
+		}
+
+		if (channel.size() != expected) {
+			return null;
+		}
+
+		return header;
+	}
+
+	/**
+	 * Contents of the header of a cache file, past the source key.
+	 */
+	private static class Header {
+		int length;
+		String[] titles;
+		int[] titleColumns;
+		final int[] counts = new int[COLUMNS];
+		final long[][] rowBits = new long[COLUMNS][];
+	}
+
+	/**
+	 * Writes the cache file, first to a temporary file that then replaces it,
+	 * so a half-written cache file is never loaded.
+	 */
+	private void store(File cacheFile, Path source, long size, long modified,
+			ColumnDataset data) throws IOException {
+
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create cache folder " + directory);
+		}
+
+		byte[] path = source.toString().getBytes(StandardCharsets.UTF_8);
+		DoubleColumn[] columns = new DoubleColumn[COLUMNS];
+		long[][] rowBits = new long[COLUMNS][];
+		byte[][] titles = new byte[data.getTitles().size()][];
+
+		// work out the header length, padded to whole doubles
+		int headerLength = 12 + 16 + 4 + path.length + 4;
+		int[] titleColumns = new int[titles.length];
+		int t = 0;
+		for (Map.Entry<Integer, String> title : data.getTitles().entrySet()) {
+			titleColumns[t] = title.getKey();
+			titles[t] = title.getValue().getBytes(StandardCharsets.UTF_8);
+			headerLength += 8 + titles[t++].length;
+		}
+		for (int column = 0; column < COLUMNS; column++) {
+			columns[column] = data.column(column);
+			rowBits[column] = columns[column].getRowBits();
+			headerLength += 8 + (8 * rowBits[column].length);
+		}
+		headerLength = (headerLength + 7) & ~7;
+
+		ByteBuffer header = ByteBuffer.allocate(headerLength).order(
+				ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC).putInt(VERSION).putInt(headerLength);
+		header.putLong(size).putLong(modified);
+		header.putInt(path.length).put(path);
+
+		header.putInt(titles.length);
+		for (t = 0; t < titles.length; t++) {
+			header.putInt(titleColumns[t]).putInt(titles[t].length).put(titles[t]);
+		}
+		for (int column = 0; column < COLUMNS; column++) {
+			header.putInt(columns[column].size()).putInt(rowBits[column].length);
+			for (long word : rowBits[column]) {
+				header.putLong(word);
+			}
+		}
+		header.position(0);
+
+		File temp = File.createTempFile(cacheFile.getName(), ".tmp", directory);
+		try {
+			try (FileChannel channel = FileChannel.open(temp.toPath(),
+					StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				while (header.hasRemaining()) {
+					channel.write(header);
+				}
+
+				ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(
+						ByteOrder.LITTLE_ENDIAN);
+				for (int column = 0; column < COLUMNS; column++) {
+					writeDoubles(channel, columns[column].toArray(), buffer);
+				}
+			}
+
+			Files.move(temp.toPath(), cacheFile.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			temp.delete();
+		}
+	}
+
+	private static ByteBuffer read(FileChannel channel, long position, int length)
+			throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length).order(
+				ByteOrder.LITTLE_ENDIAN);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of cache file");
+			}
+		}
+
+		buffer.flip();
+		return buffer;
+	}
+
+	private static String getString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Fills values from the doubles stored at position, mapping at most
+	 * SEGMENT_SIZE bytes at a time.
+	 */
+	private static void readDoubles(FileChannel channel, long position,
+			double[] values) throws IOException {
+		int perSegment = SEGMENT_SIZE / 8;
+
+		for (int from = 0; from < values.length; from += perSegment) {
+			int count = Math.min(perSegment, values.length - from);
+			DoubleBuffer mapped = channel
+					.map(FileChannel.MapMode.READ_ONLY, position + (8L * from),
+							8L * count).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+			mapped.get(values, from, count);
+		}
+	}
+
+	private static void writeDoubles(FileChannel channel, double[] values,
+			ByteBuffer buffer) throws IOException {
+		buffer.clear();
+		DoubleBuffer doubles = buffer.asDoubleBuffer();
+
+		for (int from = 0; from < values.length; from += doubles.capacity()) {
+			int count = Math.min(doubles.capacity(), values.length - from);
+			doubles.clear();
+			doubles.put(values, from, count);
+
+			buffer.clear();
+			buffer.limit(8 * count);
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+	}
+}
@@ -0,0 +1,135 @@
+import java.util.HashMap;
+
+/**
+ * Columns of x, y and weights read from a file, together with the column
+ * titles from its first row. The readers write into this directly, and the
+ * regressions read its arrays without copying.
+ */
+public class ColumnDataset {
+
+	private final HashMap<Integer, String> title = new HashMap<Integer, String>();
+	private final DoubleColumn x;
+	private final DoubleColumn y;
+	private final DoubleColumn w;
+
+	public ColumnDataset() {
+		this(new DoubleColumn(), new DoubleColumn(), new DoubleColumn());
+	}
+
+	/**
+	 * @param x
+	 *          Column of x-values.
+	 * @param y
+	 *          Column of y-values.
+	 * @param w
+	 *          Column of weights, empty if there are none.
+	 */
+	public ColumnDataset(DoubleColumn x, DoubleColumn y, DoubleColumn w) {
+		this.x = x;
+		this.y = y;
+		this.w = w;
+	}
+
+	/**
+	 * @param column
+	 *          Index of the column: 0 for x, 1 for y, 2 for weights.
+	 * @return The column, or null for any other index.
+	 */
+	public DoubleColumn column(int column) {
+		switch (column) {
+		case 0:
+			return x;
+		case 1:
+			return y;
+		case 2:
+			return w;
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * @param column
+	 *          Index of the column.
+	 * @param text
+	 *          Title of the column.
+	 */
+	public void setTitle(int column, String text) {
+		title.put(column, text);
+	}
+
+	/**
+	 * @param column
+	 *          Index of the column.
+	 * @return Title of the column, or null if it has none.
+	 */
+	public String getTitle(int column) {
+		return title.get(column);
+	}
+
+	/**
+	 * @return Column titles by column index.
+	 */
+	public HashMap<Integer, String> getTitles() {
+		return title;
+	}
+
+	/**
+	 * @return Number of x-y pairs.
+	 */
+	public int size() {
+		return x.size();
+	}
+
+	/**
+	 * @return true if the file had a column of weights.
+	 */
+	public boolean hasWeights() {
+		return !w.isEmpty();
+	}
+
+	/**
+	 * @return true if every x-y pair has a weight, and there are no others.
+	 */
+	public boolean weightsMatch() {
+		return w.sameRows(x);
+	}
+
+	/**
+	 * Checks that the columns hold at least two x-y pairs, and that every x has
+	 * a y in the same row.
+	 *
+	 * @throws DataException
+	 *           If they do not.
+	 */
+	public void validate() {
+		// Check we have at least 2 x-y pairs
+		int minSize = 2;
+		if (x.size() < minSize || y.size() < minSize) {
+			throw new DataException(DataException.Reason.TOO_FEW_PAIRS,
+					"Not enough x-y pairs to form a line");
+		}
+
+		// Check we have a y for each x
+		if (!x.sameRows(y)) {
+			throw new DataException(DataException.Reason.UNPAIRED,
+					"Invalid x-y pairs; make sure each x has a y!");
+		}
+	}
+
+	/**
+	 * @return Dataset of x, y in the form the regressions take. Shares its
+	 *         arrays with the columns.
+	 */
+	public double[][] toDataset() {
+		return new double[][] { x.toArray(), y.toArray() };
+	}
+
+	/**
+	 * @return Array of weights, one per x-y pair if weightsMatch() holds.
+	 *         Shares its array with the weight column.
+	 */
+	public double[] getWeights() {
+		return w.toArray();
+	}
+}
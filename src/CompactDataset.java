@@ -0,0 +1,193 @@
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Dataset in which points sharing an x-value have been collapsed into one.
+ * Each point of a compact dataset stands for a group of original points: it
+ * has their x-value, the weighted mean of their y-values and the sum of their
+ * weights, along with the weighted variance of their y-values and how many
+ * there were. The points are sorted by x, and no two x-values are equal.
+ *
+ * The weighted least squares line through the compacted points is the same as
+ * through the original ones, so WLR loses nothing. RLR and LOESS need distinct
+ * x-values, so on data with repeated x-values they can only run on a compact
+ * dataset; they then fit the group means, with LOESS also weighting each by
+ * its group's weight. Either way the work shrinks by the duplication factor.
+ *
+ * The arrays returned by the getters are shared, not copied, and must not be
+ * changed.
+ */
+public final class CompactDataset {
+
+	private final double[] x, y, weights, variances;
+	private final int[] counts;
+	private final int originalSize;
+
+	private CompactDataset(double[] x, double[] y, double[] weights,
+			double[] variances, int[] counts, int originalSize) {
+		this.x = x;
+		this.y = y;
+		this.weights = weights;
+		this.variances = variances;
+		this.counts = counts;
+		this.originalSize = originalSize;
+	}
+
+	/**
+	 * Collapses the points of a dataset that share an x-value. The input is
+	 * left unchanged. Takes O(n log n) time to sort the x-values, then a single
+	 * pass to form the groups.
+	 *
+	 * @param x
+	 *          Array of predictor values, in any order.
+	 * @param y
+	 *          Array of response values.
+	 * @param w
+	 *          Array of weights, or null to weight every point with unity.
+	 * @param pool
+	 *          Pool to sort in parallel on, or null to sort sequentially.
+	 * @return Compact dataset sorted by x.
+	 * @throws DataException
+	 *           If there are fewer than two distinct x-values.
+	 */
+	public static CompactDataset compact(double[] x, double[] y, double[] w,
+			ForkJoinPool pool) {
+		return compact(x, y, w, PairedSort.order(x, pool));
+	}
+
+	/**
+	 * Collapses the points of a dataset already sorted by x, in a single pass.
+	 *
+	 * @throws DataException
+	 *           If there are fewer than two distinct x-values.
+	 */
+	static CompactDataset compactSorted(double[] x, double[] y, double[] w) {
+		int[] order = new int[x.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+
+		return compact(x, y, w, order);
+	}
+
+	/**
+	 * Collapses the points, visiting them in the given ascending order of x.
+	 */
+	private static CompactDataset compact(double[] x, double[] y, double[] w,
+			int[] order) {
+
+		int sampleSize = x.length;
+
+		int groups = 0;
+		for (int i = 0; i < sampleSize; i++) {
+			if (i == 0 || x[order[i]] != x[order[i - 1]]) {
+				groups++;
+			}
+		}
+
+		if (groups < 2) {
+			throw new DataException(DataException.Reason.TOO_FEW_PAIRS,
+					"Fewer than two distinct x-values!");
+		}
+
+		double[] cx = new double[groups];
+		double[] cy = new double[groups];
+		double[] cw = new double[groups];
+		double[] cv = new double[groups];
+		int[] counts = new int[groups];
+
+		int group = 0;
+		for (int start = 0; start < sampleSize; group++) {
+			double xg = x[order[start]];
+			int end = start + 1;
+			while (end < sampleSize && x[order[end]] == xg) {
+				end++;
+			}
+
+			// Two passes over the group, for the mean and then the variance.
+			// Groups whose weights are all zero take the plain mean instead.
+			double wsum = 0, wysum = 0;
+			for (int i = start; i < end; i++) {
+				double wi = (w == null) ? 1 : w[order[i]];
+				wsum += wi;
+				wysum += wi * y[order[i]];
+			}
+			boolean unweighted = wsum == 0;
+			if (unweighted) {
+				wysum = 0;
+				for (int i = start; i < end; i++) {
+					wysum += y[order[i]];
+				}
+			}
+			double mean = wysum / (unweighted ? end - start : wsum);
+
+			double ss = 0;
+			for (int i = start; i < end; i++) {
+				double wi = (w == null || unweighted) ? 1 : w[order[i]];
+				double dy = y[order[i]] - mean;
+				ss += wi * dy * dy;
+			}
+
+			cx[group] = xg;
+			cy[group] = mean;
+			cw[group] = wsum;
+			cv[group] = ss / (unweighted ? end - start : wsum);
+			counts[group] = end - start;
+
+			start = end;
+		}
+
+		return new CompactDataset(cx, cy, cw, cv, counts, sampleSize);
+	}
+
+	/**
+	 * @return Number of compacted points, one per distinct x-value.
+	 */
+	public int size() {
+		return x.length;
+	}
+
+	/**
+	 * @return Number of points before compaction.
+	 */
+	public int getOriginalSize() {
+		return originalSize;
+	}
+
+	/**
+	 * @return true if some x-value was shared by more than one point.
+	 */
+	public boolean hadDuplicates() {
+		return originalSize > x.length;
+	}
+
+	/**
+	 * @return Dataset of the distinct x-values and the weighted mean y of
+	 *         each, in the form the regressions take.
+	 */
+	public double[][] toDataset() {
+		return new double[][] { x, y };
+	}
+
+	/**
+	 * @return Sum of the weights of each group, or its number of points if the
+	 *         original dataset had no weights.
+	 */
+	public double[] getWeights() {
+		return weights;
+	}
+
+	/**
+	 * @return Weighted variance of the y-values of each group, about the
+	 *         group's mean. Zero for groups of a single point.
+	 */
+	public double[] getVariances() {
+		return variances;
+	}
+
+	/**
+	 * @return Number of original points in each group.
+	 */
+	public int[] getCounts() {
+		return counts;
+	}
+}
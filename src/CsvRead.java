@@ -0,0 +1,369 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Description: Reads the same columns as ExcelRead (x, y and weights from the
+ * first three columns, titles from the first row) from a comma or tab
+ * separated text file.
+ *
+ * The file is memory-mapped rather than read through a stream, in segments
+ * of at most SEGMENT_SIZE bytes that end on a line break. Each segment is
+ * split at line breaks into chunks that are parsed in parallel, with numbers
+ * read straight from the mapped bytes by DoubleParser. The chunks' columns
+ * are then joined in file order.
+ *
+ * As in a sheet, the first line is the title row: text fields there become
+ * column titles and numbers are ignored. Empty or non-numeric fields on
+ * later lines count as missing cells. Fields may be wrapped in double quotes,
+ * but quoted fields cannot contain separators or line breaks.
+ *
+ * Problems with the file are reported by throwing a DataException.
+ */
+public class CsvRead implements DataReader {
+
+	// Columns read from the file: x, y, weights
+	private static final int COLUMNS = 3;
+
+	// Longest part of the file mapped at once
+	private static final int SEGMENT_SIZE = 1 << 30;
+
+	// Approximate number of bytes parsed by each task
+	private static final int CHUNK_SIZE = 1 << 22;
+
+	private static final byte COMMA = ',';
+	private static final byte TAB = '\t';
+	private static final byte QUOTE = '"';
+	private static final byte NEWLINE = '\n';
+
+	// Separator of fields, or zero to detect it from the title row
+	private final byte separator;
+
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Reader that uses tabs if the title row has any, and commas otherwise.
+	 */
+	public CsvRead() {
+		this.separator = 0;
+	}
+
+	/**
+	 * @param separator
+	 *          Character between fields, such as ',' or '\t'.
+	 */
+	public CsvRead(char separator) {
+		if (separator == 0 || separator > Byte.MAX_VALUE
+				|| separator == NEWLINE || separator == QUOTE) {
+			throw new IllegalArgumentException("Invalid separator");
+		}
+
+		this.separator = (byte) separator;
+	}
+
+	/**
+	 * Sets the number of threads used to parse. A parallelism of one parses
+	 * the whole file on the calling thread.
+	 *
+	 * @param parallelism
+	 *          Number of threads, at least one.
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1");
+		}
+
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Reads a comma or tab separated file.
+	 *
+	 * @param fileName
+	 *          name of text file
+	 * @return Columns and titles read from the file
+	 * @throws IOException
+	 *           If the file cannot be read
+	 * @throws DataException
+	 *           If the file does not hold at least two complete x-y pairs
+	 */
+	public ColumnDataset run(String fileName) throws IOException {
+		ColumnDataset data = new ColumnDataset();
+		ForkJoinPool pool = null;
+
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName),
+				StandardOpenOption.READ)) {
+
+			// Files of a single chunk are parsed on this thread
+			long size = channel.size();
+			if (parallelism > 1 && size > CHUNK_SIZE) {
+				pool = new ForkJoinPool(parallelism);
+			}
+
+			long position = 0;
+			int row = 0;
+			byte fieldSeparator = separator;
+
+			while (position < size) {
+				int length = (int) Math.min(SEGMENT_SIZE, size - position);
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+						position, length);
+
+				// Unless this is the end of the file, stop after the last line break
+				int end = length;
+				if (position + length < size) {
+					end = lineEnd(buffer, length);
+					if (end == 0) {
+						throw new IOException("Line longer than " + SEGMENT_SIZE
+								+ " bytes");
+					}
+				}
+
+				int start = 0;
+				if (position == 0) {
+					start = lineStart(buffer, 0, end);
+					if (fieldSeparator == 0) {
+						fieldSeparator = detectSeparator(buffer, start);
+					}
+					readTitles(buffer, start, fieldSeparator, data);
+					row = 1;
+				}
+
+				row = readRows(buffer, start, end, fieldSeparator, row, data, pool);
+				position += end;
+			}
+		} finally {
+			if (pool != null) {
+				pool.shutdown();
+			}
+		}
+
+		data.validate();
+		return data;
+	}
+
+	/**
+	 * Parses the lines in [from, to), which must end on a line break unless
+	 * they end the file.
+	 *
+	 * @return Row of the line after the last one parsed
+	 */
+	private int readRows(ByteBuffer buffer, int from, int to, byte separator,
+			int row, ColumnDataset data, ForkJoinPool pool) {
+
+		// Split into chunks that end just after a line break
+		List<ChunkTask> chunks = new ArrayList<ChunkTask>();
+		for (int start = from; start < to;) {
+			int end = (to - start <= CHUNK_SIZE) ? to : lineStart(buffer, start
+					+ CHUNK_SIZE, to);
+			chunks.add(new ChunkTask(buffer, start, end, separator));
+			start = end;
+		}
+
+		if (pool == null || chunks.size() == 1) {
+			for (ChunkTask chunk : chunks) {
+				chunk.compute();
+			}
+		} else {
+			for (ChunkTask chunk : chunks) {
+				pool.execute(chunk);
+			}
+			for (ChunkTask chunk : chunks) {
+				chunk.join();
+			}
+		}
+
+		// join the columns in file order, shifting rows past the earlier chunks
+		for (ChunkTask chunk : chunks) {
+			for (int column = 0; column < COLUMNS; column++) {
+				data.column(column).addAll(chunk.columns[column], row);
+			}
+			row += chunk.lines;
+		}
+
+		return row;
+	}
+
+	/**
+	 * @return Index after the first line break at or after from, or to if
+	 *         there is none.
+	 */
+	private static int lineStart(ByteBuffer buffer, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (buffer.get(i) == NEWLINE) {
+				return i + 1;
+			}
+		}
+
+		return to;
+	}
+
+	/**
+	 * @return Index after the last line break before to, or zero if there is
+	 *         none.
+	 */
+	private static int lineEnd(ByteBuffer buffer, int to) {
+		for (int i = to - 1; i >= 0; i--) {
+			if (buffer.get(i) == NEWLINE) {
+				return i + 1;
+			}
+		}
+
+		return 0;
+	}
+
+	private static byte detectSeparator(ByteBuffer buffer, int to) {
+		for (int i = 0; i < to; i++) {
+			if (buffer.get(i) == TAB) {
+				return TAB;
+			}
+		}
+
+		return COMMA;
+	}
+
+	/**
+	 * Stores the text fields of the title row [0, to) as column titles.
+	 */
+	private static void readTitles(ByteBuffer buffer, int to, byte separator,
+			ColumnDataset data) {
+
+		// skip a UTF-8 byte order mark
+		int from = 0;
+		if (to >= 3 && buffer.get(0) == (byte) 0xEF && buffer.get(1) == (byte) 0xBB
+				&& buffer.get(2) == (byte) 0xBF) {
+			from = 3;
+		}
+
+		int column = 0;
+		int fieldStart = from;
+		for (int i = from; i <= to; i++) {
+			if (i == to || buffer.get(i) == separator || buffer.get(i) == NEWLINE) {
+				int[] field = trim(buffer, fieldStart, i);
+				if (field[0] < field[1]
+						&& Double.isNaN(DoubleParser.parse(buffer, field[0], field[1]))) {
+					byte[] text = new byte[field[1] - field[0]];
+					for (int j = 0; j < text.length; j++) {
+						text[j] = buffer.get(field[0] + j);
+					}
+					data.setTitle(column, new String(text, StandardCharsets.UTF_8));
+				}
+
+				column++;
+				fieldStart = i + 1;
+			}
+		}
+	}
+
+	/**
+	 * @return Bounds of the field [from, to) without surrounding spaces,
+	 *         carriage return or quotes.
+	 */
+	private static int[] trim(ByteBuffer buffer, int from, int to) {
+		while (from < to && isSpace(buffer.get(from))) {
+			from++;
+		}
+		while (to > from && isSpace(buffer.get(to - 1))) {
+			to--;
+		}
+		if (to - from >= 2 && buffer.get(from) == QUOTE
+				&& buffer.get(to - 1) == QUOTE) {
+			from++;
+			to--;
+		}
+
+		return new int[] { from, to };
+	}
+
+	private static boolean isSpace(byte b) {
+		return b == ' ' || b == '\r' || b == TAB;
+	}
+
+	/**
+	 * Parses the lines [from, to) of the mapped file into columns whose rows
+	 * count from the chunk's first line.
+	 */
+	private static class ChunkTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final ByteBuffer buffer;
+		private final int from, to;
+		private final byte separator;
+
+		final DoubleColumn[] columns = new DoubleColumn[COLUMNS];
+		int lines;
+
+		ChunkTask(ByteBuffer buffer, int from, int to, byte separator) {
+			this.buffer = buffer;
+			this.from = from;
+			this.to = to;
+			this.separator = separator;
+		}
+
+		@Override
+		protected void compute() {
+			for (int column = 0; column < COLUMNS; column++) {
+				columns[column] = new DoubleColumn();
+			}
+
+			int row = 0;
+			int column = 0;
+			int fieldStart = from;
+
+			for (int i = from; i < to; i++) {
+				byte b = buffer.get(i);
+				if (b == separator) {
+					field(row, column++, fieldStart, i);
+					fieldStart = i + 1;
+				} else if (b == NEWLINE) {
+					field(row++, column, fieldStart, i);
+					column = 0;
+					fieldStart = i + 1;
+				}
+			}
+
+			// last line of the file, without a line break
+			if (fieldStart < to || column > 0) {
+				field(row++, column, fieldStart, to);
+			}
+
+			lines = row;
+		}
+
+		private void field(int row, int column, int from, int to) {
+			if (column >= COLUMNS) {
+				return;
+			}
+
+			// trim spaces, carriage return and quotes in place, without allocating
+			while (from < to && isSpace(buffer.get(from))) {
+				from++;
+			}
+			while (to > from && isSpace(buffer.get(to - 1))) {
+				to--;
+			}
+			if (to - from >= 2 && buffer.get(from) == QUOTE
+					&& buffer.get(to - 1) == QUOTE) {
+				from++;
+				to--;
+			}
+			if (from == to) {
+				return;
+			}
+
+			double value = DoubleParser.parse(buffer, from, to);
+			if (!Double.isNaN(value)) {
+				columns[column].add(row, value);
+			}
+		}
+	}
+}
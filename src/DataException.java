@@ -0,0 +1,58 @@
+/**
+ * Thrown when a dataset cannot be read or regressed on. The reason tells the
+ * caller what went wrong, so that it can report the problem in its own way
+ * (the GUI shows an Alert, a batch job might log it and move on).
+ */
+public class DataException extends IllegalArgumentException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Kinds of problems with a dataset.
+	 */
+	public enum Reason {
+		/** The file is not a readable Excel workbook. */
+		NOT_EXCEL,
+		/** Fewer than two x-y pairs were found. */
+		TOO_FEW_PAIRS,
+		/** Some x-value has no matching y-value, or the other way round. */
+		UNPAIRED,
+		/** Two points share an x-value where distinct x-values are required. */
+		DUPLICATE_X,
+		/** The points are not in ascending order of x where that is required. */
+		UNSORTED
+	}
+
+	private final Reason reason;
+
+	/**
+	 * @param reason
+	 *          Kind of problem.
+	 * @param message
+	 *          Message suitable for showing to the user.
+	 */
+	public DataException(Reason reason, String message) {
+		super(message);
+		this.reason = reason;
+	}
+
+	/**
+	 * @param reason
+	 *          Kind of problem.
+	 * @param message
+	 *          Message suitable for showing to the user.
+	 * @param cause
+	 *          Underlying exception.
+	 */
+	public DataException(Reason reason, String message, Throwable cause) {
+		super(message, cause);
+		this.reason = reason;
+	}
+
+	/**
+	 * @return Kind of problem.
+	 */
+	public Reason getReason() {
+		return reason;
+	}
+}
@@ -0,0 +1,19 @@
+import java.io.IOException;
+
+/**
+ * Reads x, y and weight columns, with their titles, from a data file.
+ */
+public interface DataReader {
+
+	/**
+	 * @param fileName
+	 *          name of the file to read
+	 * @return Columns and titles read from the file
+	 * @throws IOException
+	 *           If the file cannot be read
+	 * @throws DataException
+	 *           If the file is not in the expected format, or does not hold at
+	 *           least two complete x-y pairs
+	 */
+	ColumnDataset run(String fileName) throws IOException;
+}
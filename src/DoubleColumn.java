@@ -0,0 +1,147 @@
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Growable column of primitive doubles, filled in row order by the readers.
+ * Alongside the values it keeps a bitmap of which sheet rows held a value, so
+ * that missing cells can be detected without storing a row index per value.
+ *
+ * Compared to a HashMap<Integer, Double> this stores each value in 8 bytes
+ * plus one bit per row, instead of a boxed key, a boxed value and a hash
+ * entry.
+ */
+public class DoubleColumn {
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private double[] values;
+	private int size = 0;
+
+	// Rows of the sheet that held a value for this column
+	private final BitSet rows = new BitSet();
+
+	public DoubleColumn() {
+		values = new double[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * @param values
+	 *          Values of the column, one per row starting at firstRow. Used
+	 *          directly, not copied.
+	 * @param firstRow
+	 *          Row of the first value.
+	 */
+	public DoubleColumn(double[] values, int firstRow) {
+		this.values = values;
+		this.size = values.length;
+		rows.set(firstRow, firstRow + values.length);
+	}
+
+	/**
+	 * @param values
+	 *          Values of the column, in row order. Used directly, not copied.
+	 * @param rowBits
+	 *          Rows that held a value, as given by getRowBits().
+	 */
+	public DoubleColumn(double[] values, long[] rowBits) {
+		this.values = values;
+		this.size = values.length;
+		rows.or(BitSet.valueOf(rowBits));
+	}
+
+	/**
+	 * Appends a value. Rows must be added in ascending order.
+	 *
+	 * @param row
+	 *          Row of the sheet the value came from.
+	 * @param value
+	 *          Value to append.
+	 */
+	public void add(int row, double value) {
+		if (size == values.length) {
+			values = Arrays.copyOf(values, Math.max(size * 2, INITIAL_CAPACITY));
+		}
+
+		values[size++] = value;
+		rows.set(row);
+	}
+
+	/**
+	 * Appends every value of another column, shifting its rows down.
+	 *
+	 * @param other
+	 *          Column whose rows all come after the rows of this one.
+	 * @param rowOffset
+	 *          Number added to each row of the other column.
+	 */
+	public void addAll(DoubleColumn other, int rowOffset) {
+		if (size + other.size > values.length) {
+			values = Arrays.copyOf(values, Math.max(size + other.size,
+					values.length * 2));
+		}
+
+		System.arraycopy(other.values, 0, values, size, other.size);
+		size += other.size;
+
+		for (int row = other.rows.nextSetBit(0); row >= 0; row = other.rows
+				.nextSetBit(row + 1)) {
+			rows.set(row + rowOffset);
+		}
+	}
+
+	/**
+	 * @param index
+	 *          Index of the value, counting only rows that held one.
+	 * @return Value at that index.
+	 */
+	public double get(int index) {
+		return values[index];
+	}
+
+	/**
+	 * @return Number of values in the column.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return true if the column holds no values.
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @param other
+	 *          Another column.
+	 * @return true if both columns have values in exactly the same rows.
+	 */
+	public boolean sameRows(DoubleColumn other) {
+		return rows.equals(other.rows);
+	}
+
+	/**
+	 * @return Rows that held a value, packed into longs as by
+	 *         BitSet.toLongArray().
+	 */
+	public long[] getRowBits() {
+		return rows.toLongArray();
+	}
+
+	/**
+	 * Returns the values of the column as an array of exactly size() elements.
+	 * The backing array is trimmed the first time, and the same array is
+	 * returned from then on, so the regressions can work on it without copying.
+	 * Changes to the returned array change the column.
+	 *
+	 * @return Values of the column.
+	 */
+	public double[] toArray() {
+		if (values.length != size) {
+			values = Arrays.copyOf(values, size);
+		}
+
+		return values;
+	}
+}
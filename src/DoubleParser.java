@@ -0,0 +1,273 @@
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses decimal numbers straight from the bytes of a buffer, without
+ * building a String for each one. Results are correctly rounded, the same as
+ * Double.parseDouble gives.
+ *
+ * Three paths are tried in turn:
+ * 1. Clinger's fast path. With at most 15 digits and a decimal exponent of
+ * at most 22, both the digits and the power of ten are exact doubles, so one
+ * multiplication or division rounds correctly.
+ * 2. The Eisel-Lemire algorithm. The digits are multiplied by a 128-bit
+ * approximation of the power of ten, which decides the rounding for all but
+ * a tiny fraction of inputs.
+ * 3. Double.parseDouble, for the rest: more than 19 digits, subnormal results
+ * and inputs Eisel-Lemire cannot decide. Only this path allocates.
+ *
+ * Resources for learning more:
+ * W. Clinger, How to read floating point numbers accurately (1990).
+ * D. Lemire, Number parsing at a gigabyte per second (2021).
+ */
+public final class DoubleParser {
+
+	// Exact powers of ten as doubles, for the fast path
+	private static final double[] POWERS = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6,
+			1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18,
+			1e19, 1e20, 1e21, 1e22 };
+	private static final int MAX_FAST_DIGITS = 15;
+	private static final int MAX_FAST_EXPONENT = 22;
+
+	// Most digits that fit in an unsigned 64-bit integer
+	private static final int MAX_DIGITS = 19;
+
+	// Decimal exponents outside this range round to zero or overflow
+	private static final int MIN_EXPONENT = -342;
+	private static final int MAX_EXPONENT = 308;
+
+	// Upper and lower 64 bits of 5^q, normalized so the top bit is set, for
+	// MIN_EXPONENT <= q <= MAX_EXPONENT.
+	private static final long[] POWER_HIGH;
+	private static final long[] POWER_LOW;
+
+	static {
+		int size = MAX_EXPONENT - MIN_EXPONENT + 1;
+		POWER_HIGH = new long[size];
+		POWER_LOW = new long[size];
+
+		BigInteger five = BigInteger.valueOf(5);
+		for (int q = MIN_EXPONENT; q <= MAX_EXPONENT; q++) {
+			BigInteger power;
+			if (q >= 0) {
+				// 5^q, truncated to its top 128 bits
+				power = five.pow(q);
+				int shift = power.bitLength() - 128;
+				power = (shift > 0) ? power.shiftRight(shift) : power.shiftLeft(-shift);
+			} else {
+				// 2^b / 5^-q, rounded up, with enough bits to truncate to 128
+				BigInteger divisor = five.pow(-q);
+				int z = divisor.bitLength();
+				int b = (q >= -27) ? z + 127 : (2 * z) + 128;
+				power = BigInteger.ONE.shiftLeft(b).divide(divisor).add(BigInteger.ONE);
+				int shift = power.bitLength() - 128;
+				if (shift > 0) {
+					power = power.shiftRight(shift);
+				}
+			}
+
+			POWER_HIGH[q - MIN_EXPONENT] = power.shiftRight(64).longValue();
+			POWER_LOW[q - MIN_EXPONENT] = power.longValue();
+		}
+	}
+
+	private DoubleParser() {
+	}
+
+	/**
+	 * Parses the bytes [from, to) of a buffer as a decimal number, such as
+	 * "-12", "3.25" or "6.02e23". The bytes must be the number only, with no
+	 * surrounding spaces.
+	 *
+	 * @param buffer
+	 *          Buffer to read. Its position is not changed.
+	 * @param from
+	 *          Index of the first byte.
+	 * @param to
+	 *          Index after the last byte.
+	 * @return Value of the number, or NaN if the bytes are not a number.
+	 */
+	public static double parse(ByteBuffer buffer, int from, int to) {
+		int i = from;
+		boolean negative = false;
+		if (i < to && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+			negative = buffer.get(i) == '-';
+			i++;
+		}
+
+		long digits = 0;
+		int count = 0; // significant digits, not counting leading zeros
+		int exponent = 0;
+		boolean any = false;
+
+		// integer part
+		for (; i < to; i++) {
+			int d = buffer.get(i) - '0';
+			if (d < 0 || d > 9) {
+				break;
+			}
+			any = true;
+			if (digits != 0 || d != 0) {
+				count++;
+			}
+			digits = (digits * 10) + d;
+		}
+
+		// fraction part
+		if (i < to && buffer.get(i) == '.') {
+			for (i++; i < to; i++) {
+				int d = buffer.get(i) - '0';
+				if (d < 0 || d > 9) {
+					break;
+				}
+				any = true;
+				if (digits != 0 || d != 0) {
+					count++;
+				}
+				digits = (digits * 10) + d;
+				exponent--;
+			}
+		}
+
+		if (!any) {
+			return Double.NaN;
+		}
+
+		// exponent part
+		if (i < to && (buffer.get(i) == 'e' || buffer.get(i) == 'E')) {
+			i++;
+			boolean negativeExponent = false;
+			if (i < to && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+				negativeExponent = buffer.get(i) == '-';
+				i++;
+			}
+
+			int start = i;
+			int value = 0;
+			for (; i < to; i++) {
+				int d = buffer.get(i) - '0';
+				if (d < 0 || d > 9) {
+					break;
+				}
+				// Past this the number is zero or infinite anyway
+				if (value < 100000) {
+					value = (value * 10) + d;
+				}
+			}
+			if (i == start) {
+				return Double.NaN;
+			}
+			exponent += negativeExponent ? -value : value;
+		}
+
+		if (i != to) {
+			return Double.NaN;
+		}
+
+		if (count > MAX_DIGITS) {
+			// digits has overflowed; let the exact slow path handle it
+			return slowParse(buffer, from, to);
+		}
+
+		if (digits == 0) {
+			return negative ? -0.0 : 0.0;
+		}
+
+		if (count <= MAX_FAST_DIGITS && exponent >= -MAX_FAST_EXPONENT
+				&& exponent <= MAX_FAST_EXPONENT) {
+			double value = (exponent < 0) ? digits / POWERS[-exponent] : digits
+					* POWERS[exponent];
+			return negative ? -value : value;
+		}
+
+		if (exponent < MIN_EXPONENT) {
+			return negative ? -0.0 : 0.0;
+		}
+		if (exponent > MAX_EXPONENT) {
+			return negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+		}
+
+		long bits = eiselLemire(digits, exponent);
+		if (bits < 0) {
+			return slowParse(buffer, from, to);
+		}
+
+		double value = Double.longBitsToDouble(bits);
+		return negative ? -value : value;
+	}
+
+	/**
+	 * @return Bits of the double nearest digits * 10^exponent, or -1 if it
+	 *         cannot be decided here.
+	 */
+	private static long eiselLemire(long digits, int exponent) {
+		long high = POWER_HIGH[exponent - MIN_EXPONENT];
+
+		// Binary exponent of 10^exponent, plus the double exponent bias and the
+		// width of the product.
+		long power = (((152170L + 65536L) * exponent) >> 16) + 1024 + 63;
+
+		int zeros = Long.numberOfLeadingZeros(digits);
+		long w = digits << zeros;
+
+		long lower = w * high;
+		long upper = unsignedMultiplyHigh(w, high);
+
+		// The truncated power may be too small to decide the rounding, so bring
+		// in its next 64 bits.
+		if ((upper & 0x1FF) == 0x1FF && Long.compareUnsigned(lower + w, lower) < 0) {
+			long low = POWER_LOW[exponent - MIN_EXPONENT];
+			long productLow = w * low;
+			long middle = lower + unsignedMultiplyHigh(w, low);
+			if (Long.compareUnsigned(middle, lower) < 0) {
+				upper++;
+			}
+			if (middle + 1 == 0 && (upper & 0x1FF) == 0x1FF
+					&& Long.compareUnsigned(productLow + w, productLow) < 0) {
+				return -1;
+			}
+			lower = middle;
+		}
+
+		long upperBit = upper >>> 63;
+		long mantissa = upper >>> (upperBit + 9);
+		zeros += (int) (1 ^ upperBit);
+
+		// Exactly halfway between two doubles; the product cannot tell which way
+		// to round to even.
+		if (lower == 0 && (upper & 0x1FF) == 0 && (mantissa & 3) == 1) {
+			return -1;
+		}
+
+		mantissa += mantissa & 1;
+		mantissa >>>= 1;
+		if (mantissa >= (1L << 53)) {
+			// rounding carried into a new bit
+			mantissa = 1L << 52;
+			zeros--;
+		}
+		mantissa &= ~(1L << 52);
+
+		long biased = power - zeros;
+		if (biased < 1 || biased > 2046) {
+			// subnormal or infinite
+			return -1;
+		}
+
+		return mantissa | (biased << 52);
+	}
+
+	private static long unsignedMultiplyHigh(long a, long b) {
+		return Math.multiplyHigh(a, b) + ((a >> 63) & b) + ((b >> 63) & a);
+	}
+
+	private static double slowParse(ByteBuffer buffer, int from, int to) {
+		byte[] bytes = new byte[to - from];
+		for (int i = from; i < to; i++) {
+			bytes[i - from] = buffer.get(i);
+		}
+
+		return Double.parseDouble(new String(bytes, StandardCharsets.US_ASCII));
+	}
+}
@@ -0,0 +1,148 @@
+/**
+ * Thins out the points of a series sorted by x for drawing, keeping its shape.
+ * A chart can only show so many points across its width, and each point
+ * drawn costs a scene graph node, so a series of a million points is reduced
+ * to a few thousand before it is charted.
+ *
+ * Uses Largest-Triangle-Three-Buckets: the first and last points are kept,
+ * and the points between are split into equal buckets, one per point kept.
+ * From each bucket the point kept is the one forming the largest triangle
+ * with the point kept from the bucket before and the mean of the bucket
+ * after. Peaks and troughs therefore survive, where taking every k-th point
+ * or the bucket means would flatten them. Takes O(n) time.
+ *
+ * See: S. Steinarsson, Downsampling Time Series for Visual Representation
+ * (2013).
+ */
+public class Downsample {
+
+	// Fewest points LTTB can keep: the first, the last and one bucket
+	private static final int MIN_BUDGET = 3;
+
+	/**
+	 * Downsamples a range of a series with LTTB.
+	 *
+	 * @param x
+	 *          Array of x-values, in ascending order.
+	 * @param y
+	 *          Array of y-values.
+	 * @param from
+	 *          First index of the range (inclusive).
+	 * @param to
+	 *          Last index of the range (exclusive).
+	 * @param budget
+	 *          Most points to keep, at least three.
+	 * @return Points kept, as an array of x-values and one of y-values. The
+	 *         whole range if it holds no more points than the budget.
+	 */
+	public static double[][] lttb(double[] x, double[] y, int from, int to,
+			int budget) {
+		if (budget < MIN_BUDGET) {
+			throw new IllegalArgumentException("Budget must be at least "
+					+ MIN_BUDGET);
+		}
+
+		int size = to - from;
+		if (size <= budget) {
+			double[][] points = new double[2][size];
+			System.arraycopy(x, from, points[0], 0, size);
+			System.arraycopy(y, from, points[1], 0, size);
+			return points;
+		}
+
+		double[][] points = new double[2][budget];
+		points[0][0] = x[from];
+		points[1][0] = y[from];
+
+		// The points between the first and last fill budget - 2 buckets
+		double bucketSize = (double) (size - 2) / (budget - 2);
+		int kept = from;
+
+		for (int bucket = 0; bucket < budget - 2; bucket++) {
+			int start = from + 1 + (int) (bucket * bucketSize);
+			int end = from + 1 + (int) ((bucket + 1) * bucketSize);
+
+			// Mean of the next bucket, or the last point after the last bucket
+			int nextEnd = Math.min(to - 1, from + 1
+					+ (int) ((bucket + 2) * bucketSize));
+			if (bucket == budget - 3) {
+				nextEnd = to;
+			}
+			double meanx = 0, meany = 0;
+			for (int i = end; i < nextEnd; i++) {
+				meanx += x[i];
+				meany += y[i];
+			}
+			meanx /= nextEnd - end;
+			meany /= nextEnd - end;
+
+			// Twice the area of the triangle with the point kept before and the
+			// mean of the next bucket, for each point of this bucket
+			double xa = x[kept], ya = y[kept];
+			double largest = -1;
+			int chosen = start;
+			for (int i = start; i < end; i++) {
+				double area = Math.abs(((xa - meanx) * (y[i] - ya))
+						- ((xa - x[i]) * (meany - ya)));
+				if (area > largest) {
+					largest = area;
+					chosen = i;
+				}
+			}
+
+			points[0][bucket + 1] = x[chosen];
+			points[1][bucket + 1] = y[chosen];
+			kept = chosen;
+		}
+
+		points[0][budget - 1] = x[to - 1];
+		points[1][budget - 1] = y[to - 1];
+
+		return points;
+	}
+
+	/**
+	 * Downsamples the part of a series between two x-values with LTTB, as
+	 * shown on a chart zoomed in on them. The nearest point outside the
+	 * interval on either side is kept as well, so that a line through the
+	 * points runs on to the edges of the chart.
+	 *
+	 * @param x
+	 *          Array of x-values, in ascending order.
+	 * @param y
+	 *          Array of y-values.
+	 * @param lower
+	 *          Smallest x-value shown.
+	 * @param upper
+	 *          Largest x-value shown.
+	 * @param budget
+	 *          Most points to keep, at least three.
+	 * @return Points kept, as an array of x-values and one of y-values.
+	 */
+	public static double[][] lttbWithin(double[] x, double[] y, double lower,
+			double upper, int budget) {
+		int from = Math.max(0, firstAbove(x, lower, false) - 1);
+		int to = Math.min(x.length, firstAbove(x, upper, true) + 1);
+
+		return lttb(x, y, from, Math.max(from, to), budget);
+	}
+
+	/**
+	 * @return Index of the first x-value above value, or at least value if
+	 *         strict is false, or the length of x if there is none.
+	 */
+	private static int firstAbove(double[] x, double value, boolean strict) {
+		int low = 0;
+		int high = x.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (x[mid] < value || (strict && x[mid] == value)) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+
+		return low;
+	}
+}
@@ -1,10 +1,6 @@
 import java.io.*;
-import java.util.HashMap;
 import java.util.Iterator;
 
-import javafx.scene.control.Alert;
-import javafx.scene.control.Alert.AlertType;
-
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.xssf.usermodel.XSSFSheet;
@@ -14,35 +10,26 @@ import org.apache.poi.xssf.usermodel.XSSFWorkbook;
  * @author Jason Zhao and Isaac Rozen 
  * Description: 
  * 		ExcelRead takes in a excel
- *      file and translates columns of x, y, and weights into HashMaps These
- *      will be used to generate Arrays for regressions Generates errors and
- *      success alerts
+ *      file and translates columns of x, y, and weights into the primitive
+ *      columns of a ColumnDataset, which the regressions use directly.
+ *      Problems with the file are reported by throwing a DataException, so
+ *      the reader does not need a GUI to run.
  */
-public class ExcelRead extends GUI {
+public class ExcelRead implements DataReader {
 
 	/**
 	 * @param filname
 	 *            name of excel file
-	 * @param title
-	 *            HashMap for storing column titles
-	 * @param x
-	 *            HashMap stores x values
-	 * @param y
-	 *            HashMap stores y values
-	 * @param w
-	 *            HashMap stores weight values
+	 * @return Columns and titles read from the first sheet
 	 * @throws IOException
 	 *             Reads in excel files and interprets x, y, weight values from
 	 *             columns
+	 * @throws DataException
+	 *             If the file is not an Excel file, or does not hold at least two
+	 *             complete x-y pairs
 	 */
-	public void run(String fileName, HashMap<Integer, String> title,
-			HashMap<Integer, Double> x, HashMap<Integer, Double> y,
-			HashMap<Integer, Double> w) throws IOException {
-
-		// Sets up error Alert
-		Alert error = new Alert(AlertType.ERROR);
-		error.setTitle("Error");
-		error.setHeaderText("Error Found!");
+	public ColumnDataset run(String fileName) throws IOException {
+		ColumnDataset data = new ColumnDataset();
 
 		// Excel file into input stream
 		File myFile = new File(fileName);
@@ -54,11 +41,9 @@ public class ExcelRead extends GUI {
 			// Finds the workbook instance for XLSX file
 			myWorkBook = new XSSFWorkbook(fis);
 		} catch (Exception e) {
-			// Alert if not excel file and exits program
-			error.setContentText("Not Excel File.");
-			error.showAndWait();
-			e.printStackTrace();
-			System.exit(0);
+			fis.close();
+			throw new DataException(DataException.Reason.NOT_EXCEL,
+					"Not Excel File.", e);
 		}
 
 		// Return first sheet from the excel workbook
@@ -81,29 +66,24 @@ public class ExcelRead extends GUI {
 				// reads in cell
 				Cell cell = cellIterator.next();
 
-				// determines cell type and stores in corresponding HashMap
+				// determines cell type and stores in corresponding column
 				switch (cell.getCellType()) {
 				case Cell.CELL_TYPE_STRING:
 					// first row for titles
 					if (cell.getRowIndex() == 0) {
-						// stores titles and column numbers into HashMap
-						title.put(cell.getColumnIndex(), cell.toString());
+						// stores titles by column number
+						data.setTitle(cell.getColumnIndex(), cell.toString());
 					}
 					break;
 				case Cell.CELL_TYPE_NUMERIC:
 
-					int firstColumn = 0;
-					int secondColumn = 1;
-					int thirdColumn = 2;
-					if (cell.getColumnIndex() == firstColumn) {
-						// stores keys and row number into HashMap
-						x.put(cell.getRowIndex(), cell.getNumericCellValue());
-					}
-					if (cell.getColumnIndex() == secondColumn) {
-						y.put(cell.getRowIndex(), cell.getNumericCellValue());
-					}
-					if (cell.getColumnIndex() == thirdColumn) {
-						w.put(cell.getRowIndex(), cell.getNumericCellValue());
+					// the first row holds titles, and only the first three
+					// columns hold x, y and weights
+					int columns = 3;
+					if (cell.getRowIndex() > 0 && cell.getColumnIndex() < columns) {
+						// appends value and marks its row as present
+						data.column(cell.getColumnIndex()).add(cell.getRowIndex(),
+								cell.getNumericCellValue());
 					}
 					break;
 				default:
@@ -112,29 +92,11 @@ public class ExcelRead extends GUI {
 			}
 		}
 
-		// Check we have at least 2 x-y pairs
-		int minSize = 2;
-		if (x.size() < minSize || y.size() < minSize) {
-			error.setContentText("Not enough x-y pairs to form a line");
-			error.showAndWait();
-			System.exit(0);
-		}
-
-		// Check we have a y for each x
-		if (x.size() != y.size()) {
-			error.setContentText("Invalid x-y pairs; make sure each x has a y!");
-			error.showAndWait();
-			System.exit(0);
-		}
-
-		// Alert for successful updating
-		Alert success = new Alert(AlertType.INFORMATION);
-		success.setTitle("Success");
-		success.setHeaderText("Successfully Read!");
-		success.setContentText("The file was read successfully!");
-		success.showAndWait();
-
 		// closes both WorkBooks
 		myWorkBook.close();
+
+		// Check we have a y for each x, and at least 2 x-y pairs
+		data.validate();
+		return data;
 	}
 }
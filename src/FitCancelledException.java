@@ -0,0 +1,69 @@
+/**
+ * Thrown when a fit stops before finishing, because its FitMonitor was
+ * cancelled or ran out of time. Nothing the fit would have written has been
+ * changed; the exception only says how far the fit got, so that the caller
+ * can tell the user or try again with a larger budget or a smaller dataset.
+ */
+public class FitCancelledException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Why a fit stopped.
+	 */
+	public enum Reason {
+		/** The monitor was cancelled. */
+		CANCELLED,
+		/** The monitor's time budget ran out. */
+		OUT_OF_TIME
+	}
+
+	private final Reason reason;
+	private final long done, total;
+
+	/**
+	 * @param reason
+	 *          Why the fit stopped.
+	 * @param message
+	 *          Message suitable for showing to the user.
+	 * @param done
+	 *          Units of work done before stopping.
+	 * @param total
+	 *          Units of work in all.
+	 */
+	public FitCancelledException(Reason reason, String message, long done,
+			long total) {
+		super(message);
+		this.reason = reason;
+		this.done = done;
+		this.total = total;
+	}
+
+	/**
+	 * @return Why the fit stopped.
+	 */
+	public Reason getReason() {
+		return reason;
+	}
+
+	/**
+	 * @return Units of work done before stopping.
+	 */
+	public long getDone() {
+		return done;
+	}
+
+	/**
+	 * @return Units of work the fit had in all.
+	 */
+	public long getTotal() {
+		return total;
+	}
+
+	/**
+	 * @return Fraction of the fit done before stopping, from 0 to 1.
+	 */
+	public double getFractionDone() {
+		return (total == 0) ? 0 : Math.min(1, (double) done / total);
+	}
+}
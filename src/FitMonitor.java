@@ -0,0 +1,138 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Follows a long fit while it runs, and stops it if asked to. A fit given a
+ * monitor counts off its work in units (points accumulated, centers fitted,
+ * pairwise slopes ruled out) as it goes, and checks now and then whether it
+ * has been cancelled or has run past its time budget. If it has, the fit
+ * throws a FitCancelledException saying how far it got, and leaves every
+ * result it would have written untouched.
+ *
+ * Checks come between chunks of work rather than after every point, so a fit
+ * stops within a fraction of a second of being cancelled, not at once.
+ *
+ * Sample usage for a fit that reports its progress and gives up after a
+ * second:
+ *
+ * monitor = new FitMonitor(1000) {
+ *   protected void progressed(long done, long total) { ... }
+ * };
+ * result = regression.fitRLR(dataset, monitor);
+ *
+ * One monitor follows one fit at a time, but that fit may run on any number
+ * of threads: cancel can be called from any thread, and progressed is called
+ * from whichever thread did the work.
+ */
+public class FitMonitor {
+
+	private final long deadline;
+	private final boolean budgeted;
+	private volatile boolean cancelled = false;
+
+	private final AtomicLong done = new AtomicLong();
+	private volatile long total = 0;
+
+	/**
+	 * Monitor without a time budget.
+	 */
+	public FitMonitor() {
+		this.deadline = 0;
+		this.budgeted = false;
+	}
+
+	/**
+	 * @param budgetMillis
+	 *          Wall-clock time the fit may take, in milliseconds, counted from
+	 *          now.
+	 */
+	public FitMonitor(long budgetMillis) {
+		if (budgetMillis < 0) {
+			throw new IllegalArgumentException("Budget must not be negative");
+		}
+
+		this.deadline = System.nanoTime() + (budgetMillis * 1000000);
+		this.budgeted = true;
+	}
+
+	/**
+	 * Asks the fit to stop at its next check.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * @return true if cancel has been called.
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * @return Units of work done so far.
+	 */
+	public long getDone() {
+		return done.get();
+	}
+
+	/**
+	 * @return Units of work the fit has in all, or zero before it starts.
+	 */
+	public long getTotal() {
+		return total;
+	}
+
+	/**
+	 * Called as the fit gets through its work, from the thread that did it.
+	 * Does nothing unless overridden. A monitor may call cancel from here, to
+	 * stop the fit on some condition of its own.
+	 *
+	 * @param done
+	 *          Units of work done so far.
+	 * @param total
+	 *          Units of work in all.
+	 */
+	protected void progressed(long done, long total) {
+	}
+
+	/**
+	 * Starts counting the work of a fit afresh.
+	 *
+	 * @param total
+	 *          Units of work in all.
+	 */
+	void start(long total) {
+		done.set(0);
+		this.total = total;
+		check();
+	}
+
+	/**
+	 * Counts some work as done, reports it, then checks whether to stop.
+	 *
+	 * @param work
+	 *          Units of work just done.
+	 * @throws FitCancelledException
+	 *           If the fit has been cancelled or is out of time.
+	 */
+	void advance(long work) {
+		progressed(done.addAndGet(work), total);
+		check();
+	}
+
+	/**
+	 * @throws FitCancelledException
+	 *           If the fit has been cancelled or is out of time.
+	 */
+	void check() {
+		if (cancelled) {
+			throw new FitCancelledException(FitCancelledException.Reason.CANCELLED,
+					"Fit cancelled!", done.get(), total);
+		}
+		if (budgeted && System.nanoTime() - deadline > 0) {
+			throw new FitCancelledException(
+					FitCancelledException.Reason.OUT_OF_TIME, "Fit ran out of time!",
+					done.get(), total);
+		}
+	}
+}
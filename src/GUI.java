@@ -1,14 +1,19 @@
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.List;
 
 import javax.imageio.ImageIO;
 
 import javafx.application.Application;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
+import javafx.concurrent.Task;
+import javafx.concurrent.WorkerStateEvent;
 import javafx.embed.swing.SwingFXUtils;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
+import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.chart.LineChart;
 import javafx.scene.chart.NumberAxis;
@@ -17,12 +22,16 @@ import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.RadioButton;
 import javafx.scene.control.TextField;
+import javafx.scene.control.Toggle;
 import javafx.scene.control.ToggleGroup;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.image.WritableImage;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.scene.text.Font;
@@ -57,6 +66,21 @@ public class GUI extends Application {
 
 	public boolean usedLOESS = false;
 
+	// most points drawn per series, however many there are; the chart is
+	// sampled again as it is zoomed or resized
+	public int pointBudget = 4000;
+	private static final int MIN_POINTS = 3;
+
+	// each scroll of the chart zooms x by this factor, with about this many
+	// ticks shown
+	private static final double ZOOM_FACTOR = 0.8;
+	private static final int TICKS = 10;
+
+	// columns and titles of the file last read, and its points sorted once
+	// for every plot made of it
+	private ColumnDataset data;
+	private SortedDataset sorted;
+
 	@Override
 	/**
 	 * @param Stage Primary stage.
@@ -96,6 +120,13 @@ public class GUI extends Application {
 		final Button stats = new Button("Show Statistics");
 		stats.setPrefWidth(buttonW);
 
+		// shows how far reading or fitting has got, and stops it
+		final ProgressBar progress = new ProgressBar(0);
+		progress.setPrefWidth(buttonW);
+
+		final Button cancel = new Button("Cancel");
+		cancel.setPrefWidth(buttonW);
+
 		// creates Radio Button for different Regressions
 		final RadioButton slr = new RadioButton();
 		slr.setText("Simple Linear Regression");
@@ -109,6 +140,10 @@ public class GUI extends Application {
 		rlr.setText("Robust Linear Regression");
 		rlr.setToggleGroup(group);
 
+		final RadioButton rmr = new RadioButton();
+		rmr.setText("Repeated Median Regression");
+		rmr.setToggleGroup(group);
+
 		final RadioButton loess = new RadioButton();
 		loess.setText("Local Regression");
 		loess.setToggleGroup(group);
@@ -162,13 +197,13 @@ public class GUI extends Application {
 		// appending visual elements to pane
 		VBox pane1 = new VBox();
 		pane1.getChildren().addAll(fileLabel, fileText, fileButton, run);
-		pane1.getChildren().addAll(blankSpace, plot, stats, exportLoc, export,
-				saveLabel, saveText);
+		pane1.getChildren().addAll(blankSpace, plot, progress, cancel, stats,
+				exportLoc, export, saveLabel, saveText);
 		pane1.getChildren().addAll(fileNameLabel, fileName);
 
 		VBox paneMid = new VBox();
 		paneMid.getChildren().addAll(linearLabel, linear, slr);
-		paneMid.getChildren().addAll(wlr, rlr);
+		paneMid.getChildren().addAll(wlr, rlr, rmr);
 
 		VBox pane2 = new VBox();
 		pane2.getChildren().addAll(localLabel, local);
@@ -186,10 +221,12 @@ public class GUI extends Application {
 		slr.setDisable(true);
 		wlr.setDisable(true);
 		rlr.setDisable(true);
+		rmr.setDisable(true);
 		loess.setDisable(true);
 		qLocal.setDisable(true);
 		qLocalText.setDisable(true);
 		plot.setDisable(true);
+		cancel.setDisable(true);
 
 		stats.setDisable(true);
 		exportLoc.setDisable(true);
@@ -206,10 +243,11 @@ public class GUI extends Application {
 		fileButton.setOnAction(new EventHandler<ActionEvent>() {
 
 			public void handle(ActionEvent e) {
-				// filters the file types to only Excel Files
+				// filters the file types to only Excel and text data files
 				fileChooser.setTitle("Open File");
-				fileChooser.getExtensionFilters().addAll(
-						new ExtensionFilter("Excel Files", "*.xlsx"));
+				fileChooser.getExtensionFilters().setAll(
+						new ExtensionFilter("Excel Files", "*.xlsx"),
+						new ExtensionFilter("CSV/TSV Files", "*.csv", "*.tsv", "*.txt"));
 
 				// user selected file becomes displayed in textfield
 				File selectedFile = fileChooser.showOpenDialog(prime);
@@ -220,131 +258,120 @@ public class GUI extends Application {
 			}
 		});
 
-		// HashMaps for title, x, y, weight values
-		final HashMap<Integer, String> title = new HashMap<Integer, String>();
-		final HashMap<Integer, Double> x = new HashMap<Integer, Double>();
-		final HashMap<Integer, Double> y = new HashMap<Integer, Double>();
-		final HashMap<Integer, Double> w = new HashMap<Integer, Double>();
+		// calls on the excel reader, or the text reader for other files. Both
+		// keep a binary copy of each file read, so reading it again is quick
+		final DataReader read = new ColumnCache(new StreamingExcelRead());
+		final DataReader csvRead = new ColumnCache(new CsvRead());
 
-		// calls on the excel reader
-		final ExcelRead read = new ExcelRead();
+		final RepeatedMedianRegression linreg = new RepeatedMedianRegression();
+		final LocalRegression localreg = new LocalRegression();
 
 		// Run button clicked activates action
 		run.setOnAction(new EventHandler<ActionEvent>() {
 
 			public void handle(final ActionEvent e) {
-				// captures case where not all textfields are filled
-				try {
-					// runs excel reader with all three inputs
-					read.run(fileText.getText(), title, x, y, w);
-
-				} catch (IOException e1) {
-					// displays error and stack trace
-					error.showAndWait();
-					e1.printStackTrace();
+				final String file = fileText.getText();
+
+				// reads and sorts the file in the background, so the window stays
+				// responsive. The file read before stays in use until this succeeds.
+				final Task<ReadResult> task = new Task<ReadResult>() {
+					protected ReadResult call() throws IOException {
+						// runs the reader matching the file type
+						ColumnDataset columns;
+						if (file.toLowerCase().endsWith(".xlsx")) {
+							columns = read.run(file);
+						} else {
+							columns = csvRead.run(file);
+						}
+						updateProgress(1, 2);
 
-					// exits program
-					System.exit(0);
-				}
+						// sort the points once here, so that each plot only runs its
+						// fit. The columns read are left as they are.
+						final double[] weights = columns.weightsMatch() ? columns
+								.getWeights() : null;
+						SortedDataset points = linreg.sort(columns.toDataset(), weights);
+						updateProgress(2, 2);
 
-				// enable buttons
-				plot.setDisable(false);
-				slr.setDisable(false);
-				wlr.setDisable(false);
-				rlr.setDisable(false);
-				loess.setDisable(false);
-				qLocal.setDisable(false);
-				qLocalText.setDisable(false);
+						return new ReadResult(columns, points);
+					}
+				};
+
+				runInBackground(task, progress, cancel,
+						new EventHandler<WorkerStateEvent>() {
+							public void handle(WorkerStateEvent event) {
+								data = task.getValue().data;
+								sorted = task.getValue().sorted;
+
+								// Alert for successful reading
+								Alert success = new Alert(AlertType.INFORMATION);
+								success.setTitle("Success");
+								success.setHeaderText("Successfully Read!");
+								success.setContentText("The file was read successfully!");
+								success.showAndWait();
+
+								// enable buttons
+								plot.setDisable(false);
+								slr.setDisable(false);
+								wlr.setDisable(false);
+								rlr.setDisable(false);
+								rmr.setDisable(false);
+								loess.setDisable(false);
+								qLocal.setDisable(false);
+								qLocalText.setDisable(false);
+							}
+						}, new EventHandler<WorkerStateEvent>() {
+							public void handle(WorkerStateEvent event) {
+								Throwable e1 = task.getException();
+								if (e1 instanceof DataException) {
+									// displays the problem with the file, so another can be
+									// chosen
+									final Alert dataError = new Alert(AlertType.ERROR);
+									dataError.setTitle("Error");
+									dataError.setHeaderText("Error Found!");
+									dataError.setContentText(e1.getMessage());
+									dataError.showAndWait();
+									return;
+								}
+
+								// displays error and stack trace
+								error.showAndWait();
+								e1.printStackTrace();
+
+								// exits program
+								System.exit(0);
+							}
+						}, fileButton, run, plot);
 			}
 		});
 
-		final ArrayList<Double> xArray = new ArrayList<Double>();
-		final ArrayList<Double> yArray = new ArrayList<Double>();
-		final ArrayList<Double> wArray = new ArrayList<Double>();
-
-		final LinearRegression linreg = new LinearRegression();
-		final LocalRegression localreg = new LocalRegression();
-
 		plot.setOnAction(new EventHandler<ActionEvent>() {
 
-			@SuppressWarnings({ "rawtypes", "unchecked" })
 			public void handle(final ActionEvent e) {
 				final Alert error = new Alert(AlertType.ERROR);
 				error.setTitle("Error");
 				error.setHeaderText("Error Found!");
 
-				prime.setTitle("Regression Plot");
-
-				// defining the axes
-				final NumberAxis xAxis = new NumberAxis();
-				final NumberAxis yAxis = new NumberAxis();
-				xAxis.setLabel(title.get(0));
-				yAxis.setLabel(title.get(1));
-
-				// creating the chart
-				final LineChart<Number, Number> sc = new LineChart<Number, Number>(
-						xAxis, yAxis);
-				sc.setTitle("Regression Plot");
-
-				// defining a series for scattered data
-				XYChart.Series series = new XYChart.Series();
-				series.setName("Data Points");
-
-				// defining the regression series
-				XYChart.Series reg = new XYChart.Series();
-
-				reg.setName("Regression Line");
-
-				// transfers Hashmap values into Arraylist
-				for (int i = 0; i < x.size(); i++) {
-					xArray.add(i, x.get(i + 1));
-					yArray.add(i, y.get(i + 1));
-					if (!w.isEmpty()) {
-						wArray.add(i, w.get(i + 1));
-					}
-				}
+				// the settings are checked here, and the fit made in the background
+				final Toggle mode = group.getSelectedToggle();
+				final SortedDataset points = sorted;
+				double q = 0;
 
-				// 2D Double array for storing x and y into dataset
-				int columns = 2; // 2 columns in the dataset
-				final double[][] dataSet = new double[columns][x.size()];
-				final double[] weight = new double[x.size()];
-
-				// 2D array for local regression
-				double[][] slopeInts = null;
-				double[][] localSet = null;
-
-				// transfers the ArrayList data into 2D arrays
-				for (int index = 0; index < x.size(); index++) {
-					dataSet[0][index] = xArray.get(index);
-					dataSet[1][index] = yArray.get(index);
-					if (!w.isEmpty()) {
-						weight[index] = wArray.get(index);
-					}
-				}
-
-				// plots different regressions depending on which user selects
-				if (group.getSelectedToggle() == slr) {
-					// running SIMPLE regression
-					linreg.SLR(dataSet);
-				} else if (group.getSelectedToggle() == rlr) {
-					// running ROBUST regression
-					linreg.RLR(dataSet);
-				} else if (group.getSelectedToggle() == wlr) {
-					// running WEIGHTED regression
-					if (w.isEmpty()) {
+				if (mode == null) {
+					error.setContentText("Please select a mode of regression!");
+					error.showAndWait();
+					return;
+				} else if (mode == wlr) {
+					if (!data.hasWeights()) {
 						error.setContentText("No column of weights found!");
 						error.showAndWait();
 						return;
-					} else if (weight.length != dataSet[0].length) {
+					} else if (!points.hasWeights()) {
 						error.setContentText("Check that each x-y pair has "
 								+ "an associated weight!");
 						error.showAndWait();
 						return;
 					}
-
-					linreg.WLR(dataSet, weight);
-				} else if (group.getSelectedToggle() == loess) {
-					// running LOCAL regression
+				} else if (mode == loess) {
 					String qString = qLocalText.getText();
 
 					// check if q textfield is filled
@@ -354,7 +381,7 @@ public class GUI extends Application {
 						return;
 					}
 
-					double q = Double.parseDouble(qString);
+					q = Double.parseDouble(qString);
 
 					// check q is valid
 					if (q > 1.0 || q < 0.0) {
@@ -363,197 +390,340 @@ public class GUI extends Application {
 						error.showAndWait();
 						return;
 					}
-
-					// check if we have enough data points to plot!
-					int minPoints = 4; // at least four points needed
-					if (dataSet[0].length < minPoints) {
-						error.setContentText("Not enough points to use LOESS!");
-						error.showAndWait();
-						return;
-					}
-
-					usedLOESS = true;
-					slopeInts = localreg.LOESS(dataSet, q);
-					localSet = localreg.plotLOESS(dataSet, slopeInts);
-				} else {
-					error.setContentText("Please select a mode of regression!");
-					error.showAndWait();
-					return;
-				}
-
-				// sort the dataset by x with associated x-y values
-				linreg.xsort(dataSet);
-
-				// populating the series with data
-				for (int i = 1; i <= x.size(); i++) {
-					series.getData().add(new XYChart.Data(x.get(i), y.get(i)));
 				}
-
-				// if not local regression
-				if (group.getSelectedToggle() != loess) {
-					// drawing the regression line by connecting initial and final point
-					reg.getData().add(new XYChart.Data(0, linreg.SampleStats[1]));
-					reg.getData().add(new XYChart.Data(dataSet[0][dataSet[0].length - 1],
-							linreg.SampleStats[0] * dataSet[0][dataSet[0].length - 1]
-											+ linreg.SampleStats[1]));
-				} else {
-					for (int i = 0; i < x.size(); i++) {
-						reg.getData().add(new XYChart.Data(localSet[0][i],
-								localSet[1][i]));
-					}
-				}
-
-				// adds both scatter points and lines to the chart
-				sc.getData().add(series);
-				sc.getData().add(reg);
-				sc.setAnimated(true);
-				sc.setCreateSymbols(true);
-
-				// defines new scene
-				final Scene scene2 = new Scene(sc, SCENE_HEIGHT, SCENE_WIDTH);
-
-				// connects css to generate overlay effect
-				scene2.getStylesheets().add(
-						getClass().getResource("root.css").toExternalForm());
-
-				// defines new stage
-				final Stage second = new Stage();
-
-				second.setScene(scene2);
-				second.show();
-
-				// activates export location and stats button
-				exportLoc.setDisable(false);
-				stats.setDisable(false);
-				saveLabel.setDisable(false);
-				saveText.setDisable(false);
-
-				// exports the seen chart to a file
-				exportLoc.setOnAction(new EventHandler<ActionEvent>() {
-					public void handle(final ActionEvent e) {
-						// allows user to select directory and updates textfield
-						final DirectoryChooser directoryChooser = new DirectoryChooser();
-						final File selectedDirectory = directoryChooser.showDialog(prime);
-
-						if (selectedDirectory != null) {
-							saveText.setText(fileName(selectedDirectory));
-							export.setDisable(false);
-
-							// activate file name buttons
-							fileNameLabel.setDisable(false);
-							fileName.setDisable(false);
-						} else {
-							error.setContentText("Directory not selected!");
-							error.showAndWait();
-						}
-					}
-				});
-
-				// Exports to chosen location
-				export.setOnAction(new EventHandler<ActionEvent>() {
-					public void handle(final ActionEvent e) {
-
-						WritableImage wim = new WritableImage((int) scene2.getWidth(),
-								(int) scene2.getHeight());
-
-						(scene2).snapshot(wim);
-
-						File file = null;
-						if (!fileName.getText().isEmpty()) {
-							file = new File(saveText.getText() + "\\" + fileName.getText()
-									+ ".png");
+				final double span = q;
+
+				final Task<PlotResult> task = new Task<PlotResult>() {
+					protected PlotResult call() {
+						// points sharing an x-value are collapsed into one at their
+						// weighted mean, since every regression but SLR needs distinct
+						// x-values. The compact dataset is kept with the sorted one for
+						// later plots. The statistics shown stay those of the points
+						// read, whichever set is fitted.
+						final boolean distinct = points.hasDistinctX();
+						final CompactDataset compact = (distinct || mode == slr) ? null
+								: points.compact();
+						final double[][] fitSet = (compact == null) ? points.toDataset()
+								: compact.toDataset();
+						final RegressionResult moments = points.getMoments();
+
+						// 2D array for local regression
+						double[][] localSet = null;
+
+						// the fit fills the first half of the progress bar, and stops
+						// at its next check once the task is cancelled
+						final Task<PlotResult> plotting = this;
+						final FitMonitor monitor = new FitMonitor() {
+							protected void progressed(long done, long total) {
+								updateProgress(done, 2 * total);
+								if (plotting.isCancelled()) {
+									cancel();
+								}
+							}
+						};
+
+						// fits the regression the user selected. The fit methods leave
+						// SampleStats alone; the result is stored once the plot is shown.
+						RegressionResult result;
+						if (mode == slr) {
+							// running SIMPLE regression
+							result = linreg.fitSLR(points);
+						} else if (mode == rlr) {
+							// running ROBUST regression
+							result = distinct ? linreg.fitRLR(points, monitor) : withMoments(
+									linreg.fitRLR(fitSet, monitor), moments);
+						} else if (mode == rmr) {
+							// running REPEATED MEDIAN regression
+							result = withMoments(linreg.fitRMR(fitSet, monitor), moments);
+						} else if (mode == wlr) {
+							// running WEIGHTED regression
+							result = distinct ? linreg.fitWLR(points, monitor)
+									: withMoments(linreg.fitWLR(fitSet, compact.getWeights(),
+											monitor), moments);
 						} else {
-							error.setContentText("No File Name!");
-							error.showAndWait();
-							return;
+							// running LOCAL regression
+
+							// check if we have enough data points to plot!
+							int minPoints = 4; // at least four points needed
+							if (fitSet[0].length < minPoints) {
+								throw new DataException(DataException.Reason.TOO_FEW_PAIRS,
+										"Not enough points to use LOESS!");
+							}
+
+							double[][] slopeInts;
+							if (distinct) {
+								slopeInts = localreg.fitLOESS(points, span, null, monitor);
+								localSet = localreg.plotLOESS(points, slopeInts);
+							} else {
+								slopeInts = localreg.fitLOESS(compact, span, null, monitor);
+								localSet = localreg.plotLOESS(fitSet, slopeInts);
+							}
+							result = moments;
 						}
-						try {
-							ImageIO.write(SwingFXUtils.fromFXImage(wim, null), "png", file);
-						} catch (IOException e2) {
-							error.setContentText("Couldn't export file!");
-							error.showAndWait();
-							e2.printStackTrace();
-							// exits program
-							System.exit(0);
-						}
-
-						Alert success = new Alert(AlertType.INFORMATION);
-						success.setTitle("Success");
-						success.setHeaderText("Export successful!");
-						success.setContentText(fileName.getText()
-								+ ".png exported successfully!");
-						success.showAndWait();
-					}
-				});
-
-				// shows the statistics for the regression analysis
-				stats.setOnAction(new EventHandler<ActionEvent>() {
-					public void handle(final ActionEvent e) {
-						// Ordering: Beta, Alpha, r^2, avgx, avgy, stdx, stdy
-						// The regression line is given by y = alpha + beta(x)
-						
-						// spacings between label and value
-						int space = 10;
-						
-						// numeric representations of stats element
-						int betan = 0;
-						int alphan = 1;
-						int rSquaren = 2;
-						int avgxn = 3;
-						int avgyn = 4;
-						int stdxn = 5;
-						int stdyn = 6;
-						
-						HBox root = new HBox(space);
-						VBox sample = new VBox(1);
-						VBox value = new VBox(1);
-
-						Label beta = new Label("Beta (slope):");
-						Label alpha = new Label("Alpha (intercept):");
-						Label rSquare = new Label("r^2:");
-						Label avgx = new Label("Average x:");
-						Label avgy = new Label("Average y:");
-						Label stdx = new Label("Standard Deviation, x:");
-						Label stdy = new Label("Standard Deviation, y:");
-
-						sample.getChildren().addAll(beta, alpha, rSquare);
-						sample.getChildren().addAll(avgx, avgy, stdx, stdy);
-
-						if (usedLOESS) {
-							Label betaV = new Label("" + localreg.SampleStats[betan]);
-							Label alphaV = new Label("" + localreg.SampleStats[alphan]);
-							Label rSquareV = new Label("" + localreg.SampleStats[rSquaren]);
-							Label avgxV = new Label("" + localreg.SampleStats[avgxn]);
-							Label avgyV = new Label("" + localreg.SampleStats[avgyn]);
-							Label stdxV = new Label("" + localreg.SampleStats[stdxn]);
-							Label stdyV = new Label("" + localreg.SampleStats[stdyn]);
-							value.getChildren().addAll(betaV, alphaV, rSquareV);
-							value.getChildren().addAll(avgxV, avgyV, stdxV, stdyV);
+						updateProgress(1, 2);
+
+						// the points of the data, in order of x, and of the line. The
+						// chart only draws a sample of them, taken as it is shown.
+						double[][] line;
+						if (localSet == null) {
+							// connecting initial and final point
+							double maxx = points.getMaxX();
+							line = new double[][] { { 0, maxx },
+									{ result.getIntercept(), result.predict(maxx) } };
 						} else {
-							Label betaV = new Label("" + linreg.SampleStats[betan]);
-							Label alphaV = new Label("" + linreg.SampleStats[alphan]);
-							Label rSquareV = new Label("" + linreg.SampleStats[rSquaren]);
-							Label avgxV = new Label("" + linreg.SampleStats[avgxn]);
-							Label avgyV = new Label("" + linreg.SampleStats[avgyn]);
-							Label stdxV = new Label("" + linreg.SampleStats[stdxn]);
-							Label stdyV = new Label("" + linreg.SampleStats[stdyn]);
-							value.getChildren().addAll(betaV, alphaV, rSquareV);
-							value.getChildren().addAll(avgxV, avgyV, stdxV, stdyV);
+							line = localSet;
 						}
+						updateProgress(2, 2);
 
-						root.getChildren().addAll(sample, value);
-
-						// defines new scene
-						final Scene scene3 = new Scene(root);
-
-						// defines new stage
-						final Stage statStage = new Stage();
-
-						statStage.setScene(scene3);
-						statStage.setTitle("Sample Statistics");
-						statStage.show();
+						return new PlotResult(result, points.toDataset(), line);
 					}
-				});
+				};
+
+				runInBackground(task, progress, cancel,
+						new EventHandler<WorkerStateEvent>() {
+							public void handle(WorkerStateEvent event) {
+								final PlotResult plotted = task.getValue();
+
+								// the statistics shown are those of the last plot
+								usedLOESS = mode == loess;
+								if (usedLOESS) {
+									localreg.store(plotted.result);
+								} else {
+									linreg.store(plotted.result);
+								}
+
+								prime.setTitle("Regression Plot");
+
+								// defining the axes
+								final NumberAxis xAxis = new NumberAxis();
+								final NumberAxis yAxis = new NumberAxis();
+								xAxis.setLabel(data.getTitle(0));
+								yAxis.setLabel(data.getTitle(1));
+
+								// creating the chart
+								final LineChart<Number, Number> sc = new LineChart<Number, Number>(
+										xAxis, yAxis);
+								sc.setTitle("Regression Plot");
+
+								// defining a series for scattered data
+								final XYChart.Series<Number, Number> series;
+								series = new XYChart.Series<Number, Number>();
+								series.setName("Data Points");
+
+								// defining the regression series
+								final XYChart.Series<Number, Number> reg;
+								reg = new XYChart.Series<Number, Number>();
+								reg.setName("Regression Line");
+
+								// adds both scatter points and lines to the chart. Each
+								// sampling replaces the points, which would otherwise be
+								// animated in and out.
+								sc.getData().add(series);
+								sc.getData().add(reg);
+								sc.setAnimated(false);
+								sc.setCreateSymbols(true);
+								resample(sc, series, plotted.points);
+								resample(sc, reg, plotted.line);
+
+								// the points are sampled again for the new width when the
+								// chart is resized
+								sc.widthProperty().addListener(new ChangeListener<Number>() {
+									public void changed(ObservableValue<? extends Number> value,
+											Number before, Number after) {
+										resample(sc, series, plotted.points);
+										resample(sc, reg, plotted.line);
+									}
+								});
+
+								// scrolling zooms in or out on x about the mouse, sampling
+								// the points shown again at full resolution
+								sc.setOnScroll(new EventHandler<ScrollEvent>() {
+									public void handle(ScrollEvent event) {
+										if (event.getDeltaY() == 0) {
+											return;
+										}
+
+										double factor = (event.getDeltaY() > 0) ? ZOOM_FACTOR
+												: 1 / ZOOM_FACTOR;
+										double center = xAxis.getValueForDisplay(
+												xAxis.sceneToLocal(event.getSceneX(),
+														event.getSceneY()).getX()).doubleValue();
+										double lower = xAxis.getLowerBound();
+										double upper = xAxis.getUpperBound();
+
+										xAxis.setAutoRanging(false);
+										xAxis.setLowerBound(center - (center - lower) * factor);
+										xAxis.setUpperBound(center + (upper - center) * factor);
+										xAxis.setTickUnit((xAxis.getUpperBound() - xAxis
+												.getLowerBound()) / TICKS);
+										resample(sc, series, plotted.points);
+										resample(sc, reg, plotted.line);
+									}
+								});
+
+								// double-clicking zooms back out to the whole dataset
+								sc.setOnMouseClicked(new EventHandler<MouseEvent>() {
+									public void handle(MouseEvent event) {
+										if (event.getClickCount() == 2) {
+											xAxis.setAutoRanging(true);
+											resample(sc, series, plotted.points);
+											resample(sc, reg, plotted.line);
+										}
+									}
+								});
+
+								// defines new scene
+								final Scene scene2 = new Scene(sc, SCENE_HEIGHT, SCENE_WIDTH);
+
+								// connects css to generate overlay effect
+								scene2.getStylesheets().add(
+										getClass().getResource("root.css").toExternalForm());
+
+								// defines new stage
+								final Stage second = new Stage();
+
+								second.setScene(scene2);
+								second.show();
+
+								// activates export location and stats button
+								exportLoc.setDisable(false);
+								stats.setDisable(false);
+								saveLabel.setDisable(false);
+								saveText.setDisable(false);
+
+								// exports the seen chart to a file
+								exportLoc.setOnAction(new EventHandler<ActionEvent>() {
+									public void handle(final ActionEvent e) {
+										// allows user to select directory and updates textfield
+										final DirectoryChooser directoryChooser = new DirectoryChooser();
+										final File selectedDirectory = directoryChooser.showDialog(prime);
+
+										if (selectedDirectory != null) {
+											saveText.setText(fileName(selectedDirectory));
+											export.setDisable(false);
+
+											// activate file name buttons
+											fileNameLabel.setDisable(false);
+											fileName.setDisable(false);
+										} else {
+											error.setContentText("Directory not selected!");
+											error.showAndWait();
+										}
+									}
+								});
+
+								// Exports to chosen location
+								export.setOnAction(new EventHandler<ActionEvent>() {
+									public void handle(final ActionEvent e) {
+
+										WritableImage wim = new WritableImage((int) scene2.getWidth(),
+												(int) scene2.getHeight());
+
+										(scene2).snapshot(wim);
+
+										File file = null;
+										if (!fileName.getText().isEmpty()) {
+											file = new File(saveText.getText() + "\\" + fileName.getText()
+													+ ".png");
+										} else {
+											error.setContentText("No File Name!");
+											error.showAndWait();
+											return;
+										}
+										try {
+											ImageIO.write(SwingFXUtils.fromFXImage(wim, null), "png", file);
+										} catch (IOException e2) {
+											error.setContentText("Couldn't export file!");
+											error.showAndWait();
+											e2.printStackTrace();
+											// exits program
+											System.exit(0);
+										}
+
+										Alert success = new Alert(AlertType.INFORMATION);
+										success.setTitle("Success");
+										success.setHeaderText("Export successful!");
+										success.setContentText(fileName.getText()
+												+ ".png exported successfully!");
+										success.showAndWait();
+									}
+								});
+
+								// shows the statistics for the regression analysis
+								stats.setOnAction(new EventHandler<ActionEvent>() {
+									public void handle(final ActionEvent e) {
+										// Ordering: Beta, Alpha, r^2, avgx, avgy, stdx, stdy
+										// The regression line is given by y = alpha + beta(x)
+									
+										// spacings between label and value
+										int space = 10;
+									
+										// numeric representations of stats element
+										int betan = 0;
+										int alphan = 1;
+										int rSquaren = 2;
+										int avgxn = 3;
+										int avgyn = 4;
+										int stdxn = 5;
+										int stdyn = 6;
+									
+										HBox root = new HBox(space);
+										VBox sample = new VBox(1);
+										VBox value = new VBox(1);
+
+										Label beta = new Label("Beta (slope):");
+										Label alpha = new Label("Alpha (intercept):");
+										Label rSquare = new Label("r^2:");
+										Label avgx = new Label("Average x:");
+										Label avgy = new Label("Average y:");
+										Label stdx = new Label("Standard Deviation, x:");
+										Label stdy = new Label("Standard Deviation, y:");
+
+										sample.getChildren().addAll(beta, alpha, rSquare);
+										sample.getChildren().addAll(avgx, avgy, stdx, stdy);
+
+										if (usedLOESS) {
+											Label betaV = new Label("" + localreg.SampleStats[betan]);
+											Label alphaV = new Label("" + localreg.SampleStats[alphan]);
+											Label rSquareV = new Label("" + localreg.SampleStats[rSquaren]);
+											Label avgxV = new Label("" + localreg.SampleStats[avgxn]);
+											Label avgyV = new Label("" + localreg.SampleStats[avgyn]);
+											Label stdxV = new Label("" + localreg.SampleStats[stdxn]);
+											Label stdyV = new Label("" + localreg.SampleStats[stdyn]);
+											value.getChildren().addAll(betaV, alphaV, rSquareV);
+											value.getChildren().addAll(avgxV, avgyV, stdxV, stdyV);
+										} else {
+											Label betaV = new Label("" + linreg.SampleStats[betan]);
+											Label alphaV = new Label("" + linreg.SampleStats[alphan]);
+											Label rSquareV = new Label("" + linreg.SampleStats[rSquaren]);
+											Label avgxV = new Label("" + linreg.SampleStats[avgxn]);
+											Label avgyV = new Label("" + linreg.SampleStats[avgyn]);
+											Label stdxV = new Label("" + linreg.SampleStats[stdxn]);
+											Label stdyV = new Label("" + linreg.SampleStats[stdyn]);
+											value.getChildren().addAll(betaV, alphaV, rSquareV);
+											value.getChildren().addAll(avgxV, avgyV, stdxV, stdyV);
+										}
+
+										root.getChildren().addAll(sample, value);
+
+										// defines new scene
+										final Scene scene3 = new Scene(root);
+
+										// defines new stage
+										final Stage statStage = new Stage();
+
+										statStage.setScene(scene3);
+										statStage.setTitle("Sample Statistics");
+										statStage.show();
+									}
+								});
+							}
+						}, new EventHandler<WorkerStateEvent>() {
+							public void handle(WorkerStateEvent event) {
+								error.setContentText(task.getException().getMessage());
+								error.showAndWait();
+							}
+						}, fileButton, run, plot);
 			}
 		});
 
@@ -577,6 +747,172 @@ public class GUI extends Application {
 
 	}
 
+	/**
+	 * @param fit
+	 *          Result of a fit to the compacted points.
+	 * @param moments
+	 *          Result of SLR on the points read.
+	 * @return Result with the line of the fit, and the r^2, means and standard
+	 *         deviations of the points read rather than of the group means.
+	 */
+	private static RegressionResult withMoments(RegressionResult fit,
+			RegressionResult moments) {
+		double[] stats = moments.toArray();
+		stats[0] = fit.getSlope();
+		stats[1] = fit.getIntercept();
+
+		return new RegressionResult(stats, fit.getRankErrorBound());
+	}
+
+	/**
+	 * Fills a series with a sample of its points, in one go so that the chart
+	 * updates once rather than per point. Only the points within the x-axis
+	 * range are sampled when it is zoomed in, and no more are drawn than
+	 * pointBudget, or two per pixel of the chart's width.
+	 * 
+	 * @param chart
+	 *          Chart showing the series.
+	 * @param series
+	 *          Series to fill.
+	 * @param points
+	 *          Every point of the series, in order of x.
+	 */
+	private void resample(LineChart<Number, Number> chart,
+			XYChart.Series<Number, Number> series, double[][] points) {
+		int budget = pointBudget;
+		if (chart.getWidth() > 0) {
+			budget = Math.min(budget, Math.max(MIN_POINTS,
+					2 * (int) chart.getWidth()));
+		}
+
+		NumberAxis xAxis = (NumberAxis) chart.getXAxis();
+		double[][] shown;
+		if (xAxis.isAutoRanging()) {
+			shown = Downsample.lttb(points[0], points[1], 0, points[0].length,
+					budget);
+		} else {
+			shown = Downsample.lttbWithin(points[0], points[1],
+					xAxis.getLowerBound(), xAxis.getUpperBound(), budget);
+		}
+
+		series.getData().setAll(chartData(shown[0], shown[1]));
+	}
+
+	/**
+	 * @param x
+	 *          Array of x-values.
+	 * @param y
+	 *          Array of y-values.
+	 * @return Chart points for the pairs, ready to be added to a series in one
+	 *         go.
+	 */
+	private static List<XYChart.Data<Number, Number>> chartData(double[] x,
+			double[] y) {
+		List<XYChart.Data<Number, Number>> points;
+		points = new ArrayList<XYChart.Data<Number, Number>>(x.length);
+		for (int i = 0; i < x.length; i++) {
+			points.add(new XYChart.Data<Number, Number>(x[i], y[i]));
+		}
+
+		return points;
+	}
+
+	/**
+	 * Runs a task on a background thread, showing its progress and letting the
+	 * cancel button stop it. The busy controls are disabled until the task is
+	 * over, then put back as they were before either handler runs. A cancelled
+	 * task runs neither handler, so nothing it made is shown.
+	 * 
+	 * @param task
+	 *          Task to run.
+	 * @param progress
+	 *          Progress bar to follow the task.
+	 * @param cancel
+	 *          Button that cancels the task.
+	 * @param onSucceeded
+	 *          Handler run on the FX thread with the task's result.
+	 * @param onFailed
+	 *          Handler run on the FX thread if the task throws.
+	 * @param busy
+	 *          Controls that must not be used while the task runs.
+	 */
+	private static void runInBackground(final Task<?> task,
+			final ProgressBar progress, final Button cancel,
+			final EventHandler<WorkerStateEvent> onSucceeded,
+			final EventHandler<WorkerStateEvent> onFailed, final Node... busy) {
+		final boolean[] disabled = new boolean[busy.length];
+		for (int i = 0; i < busy.length; i++) {
+			disabled[i] = busy[i].isDisable();
+			busy[i].setDisable(true);
+		}
+
+		progress.progressProperty().bind(task.progressProperty());
+		cancel.setOnAction(new EventHandler<ActionEvent>() {
+			public void handle(ActionEvent e) {
+				task.cancel();
+			}
+		});
+		cancel.setDisable(false);
+
+		// puts the controls back, whichever way the task ends
+		final EventHandler<WorkerStateEvent> finish =
+				new EventHandler<WorkerStateEvent>() {
+			public void handle(WorkerStateEvent event) {
+				progress.progressProperty().unbind();
+				progress.setProgress(0);
+				cancel.setDisable(true);
+				for (int i = 0; i < busy.length; i++) {
+					busy[i].setDisable(disabled[i]);
+				}
+			}
+		};
+		task.setOnSucceeded(new EventHandler<WorkerStateEvent>() {
+			public void handle(WorkerStateEvent event) {
+				finish.handle(event);
+				onSucceeded.handle(event);
+			}
+		});
+		task.setOnFailed(new EventHandler<WorkerStateEvent>() {
+			public void handle(WorkerStateEvent event) {
+				finish.handle(event);
+				onFailed.handle(event);
+			}
+		});
+		task.setOnCancelled(finish);
+
+		Thread thread = new Thread(task);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Columns of a file read in the background, and its points sorted by x.
+	 */
+	private static class ReadResult {
+		final ColumnDataset data;
+		final SortedDataset sorted;
+
+		ReadResult(ColumnDataset data, SortedDataset sorted) {
+			this.data = data;
+			this.sorted = sorted;
+		}
+	}
+
+	/**
+	 * Fit made in the background, and the points of the data and of the
+	 * regression line or curve, at full resolution and in order of x.
+	 */
+	private static class PlotResult {
+		final RegressionResult result;
+		final double[][] points, line;
+
+		PlotResult(RegressionResult result, double[][] points, double[][] line) {
+			this.result = result;
+			this.points = points;
+			this.line = line;
+		}
+	}
+
 	/**
 	 * @param args
 	 *          Main method runs the program
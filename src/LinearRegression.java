@@ -1,19 +1,33 @@
 import java.lang.Math;
-import java.util.Arrays;
-
-import javafx.scene.control.Alert;
-import javafx.scene.control.Alert.AlertType;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Performs either simple, weighted, or robust linear regression on a dataset of
  * x, y values. If dataset has non-distinct x-values, then only simple linear
- * regression is valid!
+ * regression is valid! The others can run on the dataset given by compact,
+ * which collapses each repeated x-value into a single weighted point.
  * 
  * Resources for learning more: SLR:
  * https://en.wikipedia.org/wiki/Simple_linear_regression WLR:
  * https://en.wikipedia.org/wiki/Least_squares#Weighted_least_squares RLR:
  * https://en.wikipedia.org/wiki/Theil%E2%80%93Sen_estimator
  * 
+ * Datasets with at least parallelThreshold points are fitted in parallel on a
+ * ForkJoinPool of the configured parallelism. The parallel and sequential
+ * paths add the same terms in a different order, so their results agree to
+ * within rounding: a relative difference of no more than about 1e-12 for
+ * well-conditioned data, and in any case below 1e-9.
+ * 
+ * The methods named after each regression (SLR, WLR, RLR) write their results
+ * into the SampleStats array, so an instance used that way belongs to one
+ * thread at a time. The fit methods (fitSLR, fitWLR, fitRLR) instead return a
+ * RegressionResult or fill a buffer given by the caller, and only read the
+ * instance's settings, so one instance can serve any number of threads.
+ * 
+ * The fit methods of the slower regressions can also take a FitMonitor, which
+ * hears how far the fit has got and can stop it part way through.
+ * 
  * @author Isaac Rozen
  * @author Jason Zhao
  */
@@ -27,6 +41,25 @@ public class LinearRegression {
 
 	double[] SampleStats = new double[statSize];
 
+	// Number of threads used for parallel fits, and the dataset size below
+	// which fits stay sequential.
+	int parallelism = Runtime.getRuntime().availableProcessors();
+	int parallelThreshold = 1 << 16;
+
+	// Smallest chunk of a dataset handed to a single fork/join task
+	int minChunkSize = 1 << 13;
+
+	private ForkJoinPool pool;
+
+	// Seed for the random sampling of slope selection in RLR. Only affects the
+	// running time, not the result.
+	long slopeSeed = 1;
+
+	// Confidence level of the rank error bound reported by approximate RLR,
+	// and the bound from the last robust fit.
+	double rankErrorConfidence = 0.95;
+	double rankErrorBound = 0;
+
 	/**
 	 * Weighted linear regression, edits SampleStats array with values of: beta,
 	 * alpha, r^2, avgx, avgy, stdx, stdy.
@@ -43,89 +76,77 @@ public class LinearRegression {
 	 *          Array of weights corresponding to each x,y.
 	 */
 	public void WLR(double[][] dataset, double[] weights) {
+		fitWLR(dataset, weights, SampleStats);
+	}
 
-		int sampleSize = dataset[0].length;
-
-		double xsum = 0, ysum = 0;
-		double xresidsqrsum = 0;
-		double yresidsqrsum = 0;
-		double varx, vary;
-		double xwsum = 0, ywsum = 0, wsum = 0;
-		double xwsqrsum = 0, xywsum = 0;
-
-		double alpha = 0; // intercept of least squares line
-		double beta = 0; // slope of least squares line
-		double r = 0; // sample correlation coeff of least squares line
-		double xbar, ybar; // sample means of x, y
-		double stdx, stdy; // sample standard deviations of x, y
-
-		// The following section computes unweighted sample statistics.
-		// These are used to calculate means, generate standard deviations.
-		for (int i = 0; i < sampleSize; i++) {
-			xsum += dataset[0][i];
-			ysum += dataset[1][i];
-		}
-
-		xbar = xsum / (sampleSize);
-		ybar = ysum / (sampleSize);
+	/**
+	 * Weighted linear regression, without touching SampleStats. Safe to call
+	 * from several threads at once.
+	 * 
+	 * @param dataset
+	 *          Dataset of x, y.
+	 * @param weights
+	 *          Array of weights corresponding to each x,y.
+	 * @return Result of the fit.
+	 */
+	public RegressionResult fitWLR(double[][] dataset, double[] weights) {
+		double[] stats = new double[statSize];
+		fitWLR(dataset, weights, stats);
+		return new RegressionResult(stats);
+	}
 
-		for (int i = 0; i < sampleSize; i++) {
-			double xresid = dataset[0][i] - xbar;
-			double yresid = dataset[1][i] - ybar;
+	/**
+	 * Weighted linear regression, writing beta, alpha, r^2, avgx, avgy, stdx,
+	 * stdy into a buffer supplied by the caller. Safe to call from several
+	 * threads at once, as long as each uses its own buffer.
+	 * 
+	 * @param dataset
+	 *          Dataset of x, y.
+	 * @param weights
+	 *          Array of weights corresponding to each x,y.
+	 * @param stats
+	 *          Array of at least seven elements to write into.
+	 */
+	public void fitWLR(double[][] dataset, double[] weights, double[] stats) {
 
-			xresidsqrsum += Math.pow(xresid, squared);
-			yresidsqrsum += Math.pow(yresid, squared);
-		}
+		int sampleSize = dataset[0].length;
 
-		varx = xresidsqrsum / (sampleSize - 1);
-		vary = yresidsqrsum / (sampleSize - 1);
+		// All seven statistics are gathered in a single pass over the data
+		accumulate(dataset[0], dataset[1], weights, sampleSize).writeStats(stats);
+	}
 
-		stdx = Math.sqrt(varx);
-		stdy = Math.sqrt(vary);
+	/**
+	 * Weighted linear regression, without touching SampleStats, reporting to a
+	 * monitor as the points are accumulated.
+	 * 
+	 * @param dataset
+	 *          Dataset of x, y.
+	 * @param weights
+	 *          Array of weights corresponding to each x,y.
+	 * @param monitor
+	 *          Monitor of the fit, or null.
+	 * @return Result of the fit.
+	 * @throws FitCancelledException
+	 *           If the monitor stops the fit.
+	 */
+	public RegressionResult fitWLR(double[][] dataset, double[] weights,
+			FitMonitor monitor) {
 
-		// The following section computes weighted sample statistics.
-		// If all weights are unity, then these calculations are similar to above.
-		for (int i = 0; i < sampleSize; i++) {
-			xwsum += (dataset[0][i] * weights[i]);
-			ywsum += (dataset[1][i] * weights[i]);
-			wsum += weights[i];
-			xwsqrsum += (Math.pow(dataset[0][i], squared) * weights[i]);
-			xywsum += (dataset[0][i] * dataset[1][i] * weights[i]);
+		int sampleSize = dataset[0].length;
+		if (monitor != null) {
+			monitor.start(sampleSize);
 		}
 
-		double D = (wsum * xwsqrsum) - Math.pow(xwsum, squared);
-
-		// Calculating the intercept, slope, and correlation for the weighted
-		// least squares line. If all weights are unity, then this is the same as
-		// calculating the simple least squares line.
-		alpha = ((xwsqrsum * ywsum) - (xwsum * xywsum)) / D;
-		beta = ((wsum * xywsum) - (xwsum * ywsum)) / D;
-		r = beta * (stdx / stdy);
-
-		// Write out to SampleStats array
-	
-		// numeric representations of stats element
-		int betan = 0;
-		int alphan = 1;
-		int rSquaren = 2;
-		int avgxn = 3;
-		int avgyn = 4;
-		int stdxn = 5;
-		int stdyn = 6;
-		
-		SampleStats[betan] = beta;
-		SampleStats[alphan] = alpha;
-		SampleStats[rSquaren] = Math.pow(r, squared);
-		SampleStats[avgxn] = xbar;
-		SampleStats[avgyn] = ybar;
-		SampleStats[stdxn] = stdx;
-		SampleStats[stdyn] = stdy;
+		double[] stats = new double[statSize];
+		accumulate(dataset[0], dataset[1], weights, sampleSize, monitor)
+				.writeStats(stats);
+		return new RegressionResult(stats);
 	}
 
 	/**
 	 * Simple linear regression, edits SampleStats array with values of: beta,
-	 * alpha, r^2, avgx, avgy, stdx, stdy. Essentially feeds into WLR, using unity
-	 * for weights.
+	 * alpha, r^2, avgx, avgy, stdx, stdy. Runs the same single pass as WLR,
+	 * using unity for weights.
 	 * 
 	 * Recall that the regression line is given by y = alpha + beta(x)
 	 * 
@@ -133,13 +154,205 @@ public class LinearRegression {
 	 *          Dataset of x, y.
 	 */
 	public void SLR(double[][] dataset) {
-		double[] weights = new double[(dataset[0].length)];
+		fitSLR(dataset, SampleStats);
+	}
+
+	/**
+	 * Simple linear regression, without touching SampleStats. Safe to call
+	 * from several threads at once.
+	 * 
+	 * @param dataset
+	 *          Dataset of x, y.
+	 * @return Result of the fit.
+	 */
+	public RegressionResult fitSLR(double[][] dataset) {
+		double[] stats = new double[statSize];
+		fitSLR(dataset, stats);
+		return new RegressionResult(stats);
+	}
 
-		for (int i = 0; i < weights.length; i++) {
-			weights[i] = 1.0;
+	/**
+	 * Simple linear regression, writing beta, alpha, r^2, avgx, avgy, stdx, stdy
+	 * into a buffer supplied by the caller. Safe to call from several threads at
+	 * once, as long as each uses its own buffer.
+	 * 
+	 * @param dataset
+	 *          Dataset of x, y.
+	 * @param stats
+	 *          Array of at least seven elements to write into.
+	 */
+	public void fitSLR(double[][] dataset, double[] stats) {
+
+		int sampleSize = dataset[0].length;
+
+		// A null weight array gives every point unity weight
+		accumulate(dataset[0], dataset[1], null, sampleSize).writeStats(stats);
+	}
+
+	/**
+	 * Simple linear regression of a sorted dataset, edits SampleStats as SLR
+	 * does. The statistics were found when the dataset was sorted, so this
+	 * takes constant time.
+	 * 
+	 * @param dataset
+	 *          Sorted dataset.
+	 */
+	public void SLR(SortedDataset dataset) {
+		store(dataset.getMoments());
+	}
+
+	/**
+	 * Simple linear regression of a sorted dataset, without touching
+	 * SampleStats. Takes constant time.
+	 * 
+	 * @param dataset
+	 *          Sorted dataset.
+	 * @return Result of the fit.
+	 */
+	public RegressionResult fitSLR(SortedDataset dataset) {
+		return dataset.getMoments();
+	}
+
+	/**
+	 * Weighted linear regression of a sorted dataset, edits SampleStats as WLR
+	 * does.
+	 * 
+	 * @param dataset
+	 *          Sorted dataset, with weights.
+	 * @throws IllegalArgumentException
+	 *           If the dataset has no weights.
+	 */
+	public void WLR(SortedDataset dataset) {
+		store(fitWLR(dataset));
+	}
+
+	/**
+	 * Weighted linear regression of a sorted dataset, without touching
+	 * SampleStats.
+	 * 
+	 * @param dataset
+	 *          Sorted dataset, with weights.
+	 * @return Result of the fit.
+	 * @throws IllegalArgumentException
+	 *           If the dataset has no weights.
+	 */
+	public RegressionResult fitWLR(SortedDataset dataset) {
+		return fitWLR(dataset, null);
+	}
+
+	/**
+	 * Weighted linear regression of a sorted dataset, without touching
+	 * SampleStats, reporting to a monitor.
+	 * 
+	 * @param dataset
+	 *          Sorted dataset, with weights.
+	 * @param monitor
+	 *          Monitor of the fit, or null.
+	 * @return Result of the fit.
+	 * @throws IllegalArgumentException
+	 *           If the dataset has no weights.
+	 * @throws FitCancelledException
+	 *           If the monitor stops the fit.
+	 */
+	public RegressionResult fitWLR(SortedDataset dataset, FitMonitor monitor) {
+		if (!dataset.hasWeights()) {
+			throw new IllegalArgumentException("Dataset has no weights");
+		}
+
+		return fitWLR(dataset.toDataset(), dataset.getWeights(), monitor);
+	}
+
+	/**
+	 * Accumulates the sample statistics of the first sampleSize points, in
+	 * parallel if the dataset is large enough.
+	 * 
+	 * @param x
+	 *          Array of predictor values.
+	 * @param y
+	 *          Array of response values.
+	 * @param weights
+	 *          Array of weights, or null to weight every point with unity.
+	 * @param sampleSize
+	 *          Number of points to accumulate.
+	 * @return Accumulator holding all of the points.
+	 */
+	StatsAccumulator accumulate(double[] x, double[] y, double[] weights,
+			int sampleSize) {
+		return accumulate(x, y, weights, sampleSize, null);
+	}
+
+	/**
+	 * Accumulates as above, reporting each chunk of points to a monitor. The
+	 * chunks start at multiples of minChunkSize, so the sums are the same as
+	 * without a monitor.
+	 */
+	StatsAccumulator accumulate(double[] x, double[] y, double[] weights,
+			int sampleSize, FitMonitor monitor) {
+
+		if (parallelism <= 1 || sampleSize < parallelThreshold) {
+			StatsAccumulator accumulator = new StatsAccumulator();
+			if (monitor == null) {
+				accumulator.add(x, y, weights, 0, sampleSize);
+				return accumulator;
+			}
+
+			for (int from = 0; from < sampleSize; from += minChunkSize) {
+				int to = Math.min(sampleSize, from + minChunkSize);
+				accumulator.add(x, y, weights, from, to);
+				monitor.advance(to - from);
+			}
+			return accumulator;
+		}
+
+		// Aim for a few chunks per thread so that work stealing can even out
+		// the load, but do not make chunks so small that merging dominates.
+		int chunksPerThread = 4;
+		int leafSize = Math.max(minChunkSize, sampleSize
+				/ (parallelism * chunksPerThread));
+
+		return getPool().invoke(
+				new AccumulateTask(x, y, weights, 0, sampleSize, leafSize, monitor));
+	}
+
+	/**
+	 * Sets the number of threads used for parallel fits. A parallelism of one
+	 * keeps every fit sequential.
+	 * 
+	 * @param parallelism
+	 *          Number of threads, at least one.
+	 */
+	public synchronized void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1");
+		}
+
+		if (pool != null && parallelism != this.parallelism) {
+			pool.shutdown();
+			pool = null;
 		}
 
-		WLR(dataset, weights);
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Sets the dataset size below which fits stay sequential.
+	 * 
+	 * @param parallelThreshold
+	 *          Minimum number of points for a parallel fit.
+	 */
+	public void setParallelThreshold(int parallelThreshold) {
+		this.parallelThreshold = parallelThreshold;
+	}
+
+	/**
+	 * @return Pool used for parallel fits, created on first use.
+	 */
+	synchronized ForkJoinPool getPool() {
+		if (pool == null) {
+			pool = new ForkJoinPool(parallelism);
+		}
+
+		return pool;
 	}
 
 	/**
@@ -154,87 +367,274 @@ public class LinearRegression {
 	 *          Dataset of x, y.
 	 */
 	public void RLR(double[][] dataset) {
+		store(fitRLR(dataset));
+	}
 
-		double alpha, beta;
+	/**
+	 * Robust linear regression, without touching SampleStats. Safe to call from
+	 * several threads at once.
+	 * 
+	 * Note, this algorithm ONLY works if the x-predictors are unique!
+	 * 
+	 * @param dataset
+	 *          Dataset of x, y.
+	 * @return Result of the fit. Slope and intercept are those of RLR, the other
+	 *         statistics those of SLR.
+	 */
+	public RegressionResult fitRLR(double[][] dataset) {
+		return fitRLR(dataset, null);
+	}
 
-		int sampleSize = dataset[0].length;
-		double[] intercepts = new double[sampleSize];
+	/**
+	 * Robust linear regression, without touching SampleStats, reporting to a
+	 * monitor as slope selection rules out pairwise slopes.
+	 * 
+	 * Note, this algorithm ONLY works if the x-predictors are unique!
+	 * 
+	 * @param dataset
+	 *          Dataset of x, y.
+	 * @param monitor
+	 *          Monitor of the fit, or null.
+	 * @return Result of the fit, as fitRLR gives it.
+	 * @throws FitCancelledException
+	 *           If the monitor stops the fit.
+	 */
+	public RegressionResult fitRLR(double[][] dataset, FitMonitor monitor) {
 
-		// The number of possible slopes from unique pairs of x, y is given by:
-		// n = (sampleSize choose 2). This calculation can overflow for small n
-		// if we only use factorials, so we directly calculate the binom. coeff.
-		int n = binomial(sampleSize, squared);
-		double[] slopes = new double[n];
+		// Find median of all pairwise slopes; set equal to beta.
+		// The slopes are never stored: slope selection finds the median of the
+		// sampleSize choose 2 slopes in O(sampleSize) memory.
+		double beta = new SlopeSelection(dataset[0], dataset[1], slopeSeed,
+				monitor).medianSlope();
 
-		// Iterate through all pairs of (x1, y1) and (x2, y2).
-		// Store the slope of the line between these points in the slopes array.
-		// We use index to keep track of where we are in the large slope array.
-		int index = 0;
+		return robustFit(dataset, beta, 0);
+	}
 
-		for (int i = 0; i < sampleSize; i++) {
-			for (int j = i + 1; j < sampleSize; j++) {
-				double yi = dataset[1][i];
-				double yj = dataset[1][j];
+	/**
+	 * Robust linear regression of a sorted dataset, edits SampleStats as RLR
+	 * does.
+	 * 
+	 * @param dataset
+	 *          Sorted dataset, with distinct x-values.
+	 * @throws DataException
+	 *           If two x-values are equal.
+	 */
+	public void RLR(SortedDataset dataset) {
+		store(fitRLR(dataset));
+	}
 
-				double xi = dataset[0][i];
-				double xj = dataset[0][j];
+	/**
+	 * Robust linear regression of a sorted dataset, without touching
+	 * SampleStats. The SLR statistics are taken from the dataset rather than
+	 * found again.
+	 * 
+	 * @param dataset
+	 *          Sorted dataset, with distinct x-values.
+	 * @return Result of the fit.
+	 * @throws DataException
+	 *           If two x-values are equal.
+	 */
+	public RegressionResult fitRLR(SortedDataset dataset) {
+		return fitRLR(dataset, null);
+	}
 
-				double slope = (yj - yi) / (xj - xi);
-				slopes[index] = slope;
-				index++;
-			}
-		}
+	/**
+	 * Robust linear regression of a sorted dataset, without touching
+	 * SampleStats, reporting to a monitor.
+	 * 
+	 * @param dataset
+	 *          Sorted dataset, with distinct x-values.
+	 * @param monitor
+	 *          Monitor of the fit, or null.
+	 * @return Result of the fit.
+	 * @throws DataException
+	 *           If two x-values are equal.
+	 * @throws FitCancelledException
+	 *           If the monitor stops the fit.
+	 */
+	public RegressionResult fitRLR(SortedDataset dataset, FitMonitor monitor) {
+		requireDistinct(dataset);
+
+		double[][] points = dataset.toDataset();
+		double beta = new SlopeSelection(points[0], points[1], slopeSeed,
+				monitor).medianSlope();
+
+		return robustFit(points, beta, 0, dataset.getMoments().toArray());
+	}
+
+	/**
+	 * Approximate robust linear regression. Works like RLR, except that beta is
+	 * the median of a random sample of pairwise slopes instead of the median of
+	 * all of them. Memory use is fixed by the sample budget, however large the
+	 * dataset is, and runs with the same seed give the same result.
+	 * 
+	 * The achieved accuracy is available afterwards from getRankErrorBound().
+	 * If the budget covers every pair, the exact RLR is run instead.
+	 * 
+	 * Note, this algorithm ONLY works if the x-predictors are unique!
+	 * 
+	 * @param dataset
+	 *          Dataset of x, y.
+	 * @param sampleBudget
+	 *          Number of pairwise slopes to sample.
+	 * @param seed
+	 *          Seed for the random sampling.
+	 * @throws IllegalArgumentException
+	 *           If the sample budget is less than one.
+	 */
+	public void RLR(double[][] dataset, int sampleBudget, long seed) {
+		store(fitRLR(dataset, sampleBudget, seed));
+	}
+
+	/**
+	 * Approximate robust linear regression, without touching SampleStats. Safe
+	 * to call from several threads at once.
+	 * 
+	 * Note, this algorithm ONLY works if the x-predictors are unique!
+	 * 
+	 * @param dataset
+	 *          Dataset of x, y.
+	 * @param sampleBudget
+	 *          Number of pairwise slopes to sample.
+	 * @param seed
+	 *          Seed for the random sampling.
+	 * @return Result of the fit, including its rank error bound.
+	 * @throws IllegalArgumentException
+	 *           If the sample budget is less than one.
+	 */
+	public RegressionResult fitRLR(double[][] dataset, int sampleBudget,
+			long seed) {
+		return fitRLR(dataset, sampleBudget, seed, null);
+	}
 
-		// Find median of slopes; set equal to beta.
-		Arrays.sort(slopes); // Sort slopes array in ascending order.
-		if (n % squared == 1) {
-			beta = slopes[(n / squared)];
-		} else {
-			beta = (slopes[(n / squared) - 1] + slopes[(n / squared)]) / squared;
+	/**
+	 * Approximate robust linear regression, without touching SampleStats,
+	 * reporting to a monitor as the slopes are sampled.
+	 * 
+	 * Note, this algorithm ONLY works if the x-predictors are unique!
+	 * 
+	 * @param dataset
+	 *          Dataset of x, y.
+	 * @param sampleBudget
+	 *          Number of pairwise slopes to sample.
+	 * @param seed
+	 *          Seed for the random sampling.
+	 * @param monitor
+	 *          Monitor of the fit, or null.
+	 * @return Result of the fit, including its rank error bound.
+	 * @throws IllegalArgumentException
+	 *           If the sample budget is less than one.
+	 * @throws FitCancelledException
+	 *           If the monitor stops the fit.
+	 */
+	public RegressionResult fitRLR(double[][] dataset, int sampleBudget,
+			long seed, FitMonitor monitor) {
+		if (sampleBudget < 1) {
+			throw new IllegalArgumentException("Sample budget must be at least 1");
 		}
 
-		// Compute all possible intercepts of xi, yi values with beta
-		for (int i = 0; i < sampleSize; i++) {
-			intercepts[i] = dataset[1][i] - (beta * dataset[0][i]);
+		int sampleSize = dataset[0].length;
+		long pairs = ((long) sampleSize * (sampleSize - 1)) / squared;
+
+		if (sampleBudget >= pairs) {
+			return fitRLR(dataset, monitor);
+		}
+		if (monitor != null) {
+			monitor.start(sampleBudget);
 		}
 
-		// Find median of intercepts; set equal to alpha
-		Arrays.sort(intercepts);
-		if (sampleSize % squared == 1) {
-			alpha = intercepts[(sampleSize / squared)];
-		} else {
-			alpha = (intercepts[(sampleSize / squared) - 1] + intercepts[(sampleSize / squared)]) / squared;
+		double[] x = dataset[0];
+		double[] y = dataset[1];
+		double[] slopes = new double[sampleBudget];
+		Random random = new Random(seed);
+
+		// Draw pairs uniformly, with replacement. Picking j from the other
+		// sampleSize - 1 points and skipping over i keeps i and j distinct.
+		for (int k = 0; k < sampleBudget; k++) {
+			int i = random.nextInt(sampleSize);
+			int j = random.nextInt(sampleSize - 1);
+			if (j >= i) {
+				j++;
+			}
+
+			slopes[k] = (y[j] - y[i]) / (x[j] - x[i]);
+
+			if (monitor != null && (k + 1) % minChunkSize == 0) {
+				monitor.advance(minChunkSize);
+			}
+		}
+		if (monitor != null) {
+			monitor.advance(sampleBudget % minChunkSize);
 		}
 
-		// Call SLR to generate appropriate sample statistics, then we overwrite
+		double beta = Selection.median(slopes, 0, sampleBudget);
+
+		// By the Dvoretzky-Kiefer-Wolfowitz inequality, the fraction of all
+		// slopes below the sample median differs from one half by at most this
+		// much, with probability rankErrorConfidence.
+		double bound = Math.sqrt(Math.log(squared / (1 - rankErrorConfidence))
+				/ (squared * sampleBudget));
+
+		return robustFit(dataset, beta, bound);
+	}
+
+	/**
+	 * @return Bound on the rank error of the slope from the last robust fit,
+	 *         as a fraction of all pairwise slopes. The slope found lies between
+	 *         the (0.5 - bound) and (0.5 + bound) quantiles of the pairwise
+	 *         slopes with probability rankErrorConfidence. Zero for exact fits.
+	 */
+	public double getRankErrorBound() {
+		return rankErrorBound;
+	}
+
+	/**
+	 * Finishes a robust fit given its slope: finds the intercept as the median
+	 * of y - beta(x), and puts both alongside the SLR statistics.
+	 */
+	private RegressionResult robustFit(double[][] dataset, double beta,
+			double bound) {
+
+		// Generate appropriate sample statistics from SLR, then we overwrite
 		// these.
-		SLR(dataset);
+		double[] stats = new double[statSize];
+		fitSLR(dataset, stats);
 
-		SampleStats[0] = beta; // Slope of RLR
-		SampleStats[1] = alpha; // Intercept of RLR
+		return robustFit(dataset, beta, bound, stats);
 	}
 
 	/**
-	 * Computes binomial coefficient
-	 * 
-	 * @param n
-	 *          - pop size
-	 * @param k
-	 *          - sample size
-	 * @return n Choose k
+	 * Finishes a robust fit as above, given the SLR statistics, which are
+	 * overwritten.
 	 */
-	private int binomial(int n, int k) {
-		if (k > n - k) {
-			k = n - k;
-		}
+	private RegressionResult robustFit(double[][] dataset, double beta,
+			double bound, double[] stats) {
 
-		int b = 1;
+		int sampleSize = dataset[0].length;
+		double[] intercepts = new double[sampleSize];
 
-		for (int i = 1, m = n; i <= k; i++, m--) {
-			b *= (m / i);
+		// Compute all possible intercepts of xi, yi values with beta
+		for (int i = 0; i < sampleSize; i++) {
+			intercepts[i] = dataset[1][i] - (beta * dataset[0][i]);
 		}
 
-		return b;
+		// Find median of intercepts; set equal to alpha. Selection finds it in
+		// linear time rather than sorting.
+		double alpha = Selection.median(intercepts, 0, sampleSize);
+
+		stats[0] = beta; // Slope of RLR
+		stats[1] = alpha; // Intercept of RLR
+
+		return new RegressionResult(stats, bound);
+	}
+
+	/**
+	 * Copies the result of a fit into SampleStats, for the methods that
+	 * report through it.
+	 */
+	void store(RegressionResult result) {
+		result.copyInto(SampleStats);
+		rankErrorBound = result.getRankErrorBound();
 	}
 
 	/**
@@ -260,59 +660,158 @@ public class LinearRegression {
 	 */
 	public double[][] plotLine(double[][] dataset) {
 
-		int sampleSize = dataset[0].length;
+		// Only the ends of the line are needed, so find the smallest and
+		// largest x rather than sorting
+		double minx = dataset[0][0];
+		double maxx = dataset[0][0];
+		for (double x : dataset[0]) {
+			minx = Math.min(minx, x);
+			maxx = Math.max(maxx, x);
+		}
+
+		return plotLine(minx, maxx);
+	}
+
+	/**
+	 * @param dataset
+	 *          Sorted dataset.
+	 * @return 2x2 array of points as plotLine gives, found in constant time.
+	 */
+	public double[][] plotLine(SortedDataset dataset) {
+		return plotLine(dataset.getMinX(), dataset.getMaxX());
+	}
+
+	private double[][] plotLine(double minx, double maxx) {
 		int dimension = 2; // 2 by 2 array
 		double[][] points = new double[dimension][dimension];
 
-		xsort(dataset);
-
-		points[0][0] = dataset[0][0];
-		points[0][1] = dataset[0][sampleSize - 1];
+		points[0][0] = minx;
+		points[0][1] = maxx;
 
 		points[1][0] = points[0][0] * getSlope() + getIntercept();
-		points[1][1] = points[1][0] * getSlope() + getIntercept();
+		points[1][1] = points[0][1] * getSlope() + getIntercept();
 
 		return points;
 	}
 
+	/**
+	 * Sorts a dataset by x once, and works out the statistics that the
+	 * regressions and plots taking a SortedDataset reuse. The dataset is left
+	 * unchanged. Sorts and accumulates in parallel for datasets of at least
+	 * parallelThreshold points.
+	 * 
+	 * @param dataset
+	 *          Dataset of x, y. Left unchanged.
+	 * @param weights
+	 *          Weights of each x, y, or null.
+	 * @return Sorted copy of the dataset.
+	 */
+	public SortedDataset sort(double[][] dataset, double[] weights) {
+
+		double[] x = dataset[0].clone();
+		double[] y = dataset[1].clone();
+		double[] w = (weights == null) ? null : weights.clone();
+
+		ForkJoinPool sortPool = null;
+		if (parallelism > 1 && x.length >= parallelThreshold) {
+			sortPool = getPool();
+		}
+
+		int[] order = PairedSort.sort(x, y, w, sortPool);
+
+		return new SortedDataset(x, y, w, order,
+				fitSLR(new double[][] { x, y }));
+	}
+
+	/**
+	 * @throws DataException
+	 *           If two x-values of the dataset are equal.
+	 */
+	static void requireDistinct(SortedDataset dataset) {
+		if (!dataset.hasDistinctX()) {
+			throw new DataException(DataException.Reason.DUPLICATE_X,
+					"Duplicate X values! Cannot perform regression!");
+		}
+	}
+
+	/**
+	 * Collapses the points of a dataset that share an x-value, for the
+	 * regressions that need distinct x-values. Sorts in parallel for datasets
+	 * of at least parallelThreshold points, as xsort does.
+	 * 
+	 * Sample usage for robust regression on data with repeated x-values:
+	 * 
+	 * compact = regression.compact(dataset, weights);
+	 * regression.RLR(compact.toDataset());
+	 * 
+	 * @param dataset
+	 *          Dataset of x, y. Left unchanged.
+	 * @param weights
+	 *          Weights of each x, y, or null.
+	 * @return Compact dataset, sorted by x.
+	 * @throws DataException
+	 *           If there are fewer than two distinct x-values.
+	 */
+	public CompactDataset compact(double[][] dataset, double[] weights) {
+
+		ForkJoinPool sortPool = null;
+		if (parallelism > 1 && dataset[0].length >= parallelThreshold) {
+			sortPool = getPool();
+		}
+
+		return CompactDataset.compact(dataset[0], dataset[1], weights, sortPool);
+	}
+
 	/**
 	 * Sorts an array in ascending order based on x-values
 	 * 
 	 * @param array
 	 *          2D array to sort. Components must be equal length
+	 * @throws DataException
+	 *           If two x-values are equal.
 	 */
 	public void xsort(double[][] array) {
+		xsort(array, null);
+	}
 
-		int arraySize = array[0].length;
+	/**
+	 * Sorts an array in ascending order based on x-values, along with its
+	 * weights. Takes O(n log n) time, and runs in parallel for arrays of at
+	 * least parallelThreshold values. Arrays in order already are only
+	 * checked, in O(n) time.
+	 * 
+	 * @param array
+	 *          2D array to sort. Components must be equal length
+	 * @param weights
+	 *          Weights of each x, y to reorder alongside, or null.
+	 * @throws DataException
+	 *           If two x-values are equal.
+	 */
+	public void xsort(double[][] array, double[] weights) {
 
-		for (int i = 0; i < arraySize; i++) {
-			for (int j = i; j < arraySize; j++) {
-				// Swap positions if lower
-				if (array[0][j] < array[0][i]) {
-					double tempx = array[0][i];
-					double tempy = array[1][i];
+		int arraySize = array[0].length;
 
-					array[0][i] = array[0][j];
-					array[1][i] = array[1][j];
+		// Data sorted already, such as from a SortedDataset, needs only the
+		// check
+		boolean sorted = true;
+		for (int i = 0; i < arraySize - 1 && sorted; i++) {
+			sorted = array[0][i] < array[0][i + 1];
+		}
+		if (sorted) {
+			return;
+		}
 
-					array[0][j] = tempx;
-					array[1][j] = tempy;
-				}
-			}
+		ForkJoinPool sortPool = null;
+		if (parallelism > 1 && arraySize >= parallelThreshold) {
+			sortPool = getPool();
 		}
-		for (int i = 0; i < arraySize - 1; i++) {
-			if (array[0][i] == array[0][i + 1]) {
-				// generates Alert for error detection
-				final Alert error = new Alert(AlertType.ERROR);
-				error.setTitle("Error");
-				error.setHeaderText("Error Found!");
 
-				// handles where not all entities are fulfilled
-				error.setContentText("Duplicate X values! "
-						+ "Cannot perform regression!");
+		PairedSort.sort(array[0], array[1], weights, sortPool);
 
-				error.showAndWait();
-				System.exit(0);
+		for (int i = 0; i < arraySize - 1; i++) {
+			if (array[0][i] == array[0][i + 1]) {
+				throw new DataException(DataException.Reason.DUPLICATE_X,
+						"Duplicate X values! Cannot perform regression!");
 			}
 		}
 	}
@@ -1,5 +1,4 @@
 import java.lang.Math;
-import java.util.Arrays;
 
 /**
  * Performs local regression using the the LOESS method
@@ -11,6 +10,22 @@ import java.util.Arrays;
 public class LocalRegression extends LinearRegression {
 	
 	int weight = 2; // third column, second index
+	
+	// Number of vertices that LOESS fits at exactly, interpolating in
+	// between, or zero to fit at every point. Also the largest interpolation
+	// error found by the last LOESS.
+	int loessVertices = 0;
+	double interpolationError = 0;
+	
+	// Number of robustness iterations after the first LOESS pass
+	int loessIterations = 0;
+	
+	// Whether each LOESS subset is the nearest neighbours of its center,
+	// rather than consecutive points with the center second to last
+	boolean loessNearest = false;
+	
+	// Number of local fits between reports to the monitor of a LOESS fit
+	static final int CHECK_INTERVAL = 64;
 
 	/**
 	 * LOESS fits linear least squares lines to local subsets of the data.
@@ -29,6 +44,7 @@ public class LocalRegression extends LinearRegression {
 	 * This prevents some misbehavior for small subsets of three or fewer points.
 	 * 
 	 * @return Array of slope/intercept pairs from the sorted dataset.
+	 * @throws DataException If two x-values are equal.
 	 */
 	public double[][] LOESS(double[][] dataset, double q) {
 		
@@ -36,97 +52,791 @@ public class LocalRegression extends LinearRegression {
 		// but the others are useful
 		super.SLR(dataset);
 		
-		int loopnum = 1;
+		double[] error = new double[1];
+		double[][] slopeInterceptSet = fitLOESS(dataset, q, error);
+		interpolationError = error[0];
+		
+		return slopeInterceptSet;
+	}
+	
+	/**
+	 * LOESS without touching SampleStats. Each local fit writes straight into
+	 * the output rather than the shared SampleStats array, so this is safe to
+	 * call from several threads at once on different datasets.
+	 * 
+	 * Once the dataset holds enough work (sample size times subset size of at
+	 * least parallelThreshold), the centers are fitted in parallel on the
+	 * pool. The fits are the same either way, so are the results.
+	 * 
+	 * @param dataset Dataset of x,y. Assumed unique x per y. Sorted in place.
+	 * @param q Fraction of dataset to use per subset, as in LOESS.
+	 * 
+	 * @return Array of slope/intercept pairs from the sorted dataset.
+	 * @throws DataException If two x-values are equal.
+	 */
+	public double[][] fitLOESS(double[][] dataset, double q) {
+		return fitLOESS(dataset, q, null);
+	}
+	
+	/**
+	 * LOESS without touching SampleStats, as fitLOESS above, that also gives
+	 * the interpolation error when vertices are set.
+	 * 
+	 * @param dataset Dataset of x,y. Assumed unique x per y. Sorted in place.
+	 * @param q Fraction of dataset to use per subset, as in LOESS.
+	 * @param error Array whose first element receives the interpolation
+	 * error, as getInterpolationError gives it, or null.
+	 * 
+	 * @return Array of slope/intercept pairs from the sorted dataset.
+	 * @throws DataException If two x-values are equal.
+	 */
+	public double[][] fitLOESS(double[][] dataset, double q, double[] error) {
+		return fitLOESS(dataset, q, error, null);
+	}
+	
+	/**
+	 * LOESS without touching SampleStats, as fitLOESS above, reporting to a
+	 * monitor as the centers of each pass are fitted. The work is every
+	 * center, or every vertex with vertices set, of the first pass and of
+	 * each robustness iteration.
+	 * 
+	 * @param dataset Dataset of x,y. Assumed unique x per y. Sorted in place.
+	 * @param q Fraction of dataset to use per subset, as in LOESS.
+	 * @param error Array whose first element receives the interpolation
+	 * error, as getInterpolationError gives it, or null.
+	 * @param monitor Monitor of the fit, or null.
+	 * 
+	 * @return Array of slope/intercept pairs from the sorted dataset.
+	 * @throws DataException If two x-values are equal.
+	 * @throws FitCancelledException If the monitor stops the fit.
+	 */
+	public double[][] fitLOESS(double[][] dataset, double q, double[] error,
+		FitMonitor monitor) {
 		
 		// Calculate subset size
 		int sampleSize = dataset[0].length;
-		int subsetSize = (int)Math.ceil(q * sampleSize);
-		
-		int minPoint = 4; //must be greater than 4 
-		if (subsetSize < minPoint) {
-			subsetSize = minPoint;
-		}
+		int subsetSize = subsetSize(sampleSize, q);
 		
 		// Sort the dataset according to the x-values.
 		xsort(dataset);
 		
-		//Initialize arrays of subset weights and data values.
-		double[] subsetWeights = new double[subsetSize];
-		double[][] subsetDataset = new double[weight][subsetSize];
+		double[] x = dataset[0];
+		double[] y = dataset[1];
 		
 		// Store subset statistics in here as a pair of slopes and intercepts.
 		double[][] slopeInterceptSet = new double[weight][sampleSize];
 		
-		// Form the initial subset to sample from
-		// Each inner loop iteration selects consecutive x-values to set as center
-		// This center value is the point around which the subset weights are made
-		// Then, weighted lin regression is performed on this set
+		fitPasses(x, y, null, subsetSize, slopeInterceptSet, error, monitor);
+		
+		// All pairs of slopes and intercepts are stored in this array of doubles!
+		return slopeInterceptSet;
+	}
+	
+	/**
+	 * Evaluates the LOESS curve of a dataset at any predictor values, inside
+	 * or outside the range of its x-values. The subset for each query is the
+	 * points nearest it, whether or not nearest-neighbour subsets are set, and
+	 * each query is fitted exactly, without vertices. With robustness
+	 * iterations set, the data points are fitted first to find the weights.
+	 * 
+	 * The queries are visited in increasing order, so that as in fitLOESS a
+	 * single sweep finds their subsets.
+	 * 
+	 * @param dataset Dataset of x,y. Assumed unique x per y. Sorted in place.
+	 * @param q Fraction of dataset to use per subset, as in LOESS.
+	 * @param queries Predictor values to evaluate the curve at, in any order.
+	 * 
+	 * @return Array of slope/intercept pairs, one per query in the order
+	 * given. The curve at queries[i] is intercept + slope * queries[i].
+	 * @throws DataException If two x-values are equal.
+	 */
+	public double[][] evaluateLOESS(double[][] dataset, double q,
+		double[] queries) {
+		
+		int sampleSize = dataset[0].length;
+		int subsetSize = subsetSize(sampleSize, q);
+		
+		xsort(dataset);
+		
+		double[] x = dataset[0];
+		double[] y = dataset[1];
+		
+		double[] robustness = null;
+		if (loessIterations > 0) {
+			double[][] slopeInterceptSet = new double[weight][sampleSize];
+			robustness = fitPasses(x, y, null, subsetSize, slopeInterceptSet, null,
+				null);
+		}
+		
+		int[] order = PairedSort.order(queries, null);
+		double[][] queryFits = new double[weight][queries.length];
+		
+		int first = 0;
+		for (int i : order) {
+			double xc = queries[i];
+			first = nearestStart(x, xc, subsetSize, first, sampleSize);
+			
+			// The subset's y-values are all near its middle one
+			double yc = y[first + (subsetSize / 2)];
+			fitLocal(x, y, robustness, first, first + subsetSize, xc, yc,
+				queryFits, i);
+		}
+		
+		return queryFits;
+	}
+	
+	/**
+	 * LOESS on a sorted dataset, edits SampleStats as LOESS does. Neither
+	 * sorts nor changes the dataset, and takes the statistics from it rather
+	 * than running SLR again.
+	 * 
+	 * @param dataset Sorted dataset, with distinct x-values.
+	 * @param q Fraction of dataset to use per subset, as in LOESS.
+	 * 
+	 * @return Array of slope/intercept pairs, one per point of the dataset.
+	 * @throws DataException If two x-values are equal.
+	 */
+	public double[][] LOESS(SortedDataset dataset, double q) {
+		store(dataset.getMoments());
+		
+		double[] error = new double[1];
+		double[][] slopeInterceptSet = fitLOESS(dataset, q, error);
+		interpolationError = error[0];
+		
+		return slopeInterceptSet;
+	}
+	
+	/**
+	 * LOESS on a sorted dataset without touching SampleStats, as above.
+	 * 
+	 * @param dataset Sorted dataset, with distinct x-values.
+	 * @param q Fraction of dataset to use per subset, as in LOESS.
+	 * @param error Array whose first element receives the interpolation
+	 * error, as getInterpolationError gives it, or null.
+	 * 
+	 * @return Array of slope/intercept pairs, one per point of the dataset.
+	 * @throws DataException If two x-values are equal.
+	 */
+	public double[][] fitLOESS(SortedDataset dataset, double q,
+		double[] error) {
+		return fitLOESS(dataset, q, error, null);
+	}
+	
+	/**
+	 * LOESS on a sorted dataset without touching SampleStats, reporting to a
+	 * monitor as fitLOESS does.
+	 * 
+	 * @param dataset Sorted dataset, with distinct x-values.
+	 * @param q Fraction of dataset to use per subset, as in LOESS.
+	 * @param error Array whose first element receives the interpolation
+	 * error, or null.
+	 * @param monitor Monitor of the fit, or null.
+	 * 
+	 * @return Array of slope/intercept pairs, one per point of the dataset.
+	 * @throws DataException If two x-values are equal.
+	 * @throws FitCancelledException If the monitor stops the fit.
+	 */
+	public double[][] fitLOESS(SortedDataset dataset, double q,
+		double[] error, FitMonitor monitor) {
+		
+		requireDistinct(dataset);
+		
+		double[][] points = dataset.toDataset();
+		int sampleSize = dataset.size();
+		int subsetSize = subsetSize(sampleSize, q);
+		
+		double[][] slopeInterceptSet = new double[weight][sampleSize];
+		fitPasses(points[0], points[1], null, subsetSize, slopeInterceptSet,
+			error, monitor);
+		
+		return slopeInterceptSet;
+	}
+	
+	/**
+	 * LOESS on a compact dataset, whose points each stand for all the points
+	 * sharing an x-value. Each group mean is weighted by its group's weight,
+	 * on top of the tricube weights, so that groups of many points pull the
+	 * curve as hard as their points would together. Edits SampleStats as
+	 * LOESS does, with the statistics of the compacted points.
+	 * 
+	 * @param dataset Compact dataset.
+	 * @param q Fraction of the compacted points to use per subset.
+	 * 
+	 * @return Array of slope/intercept pairs, one per compacted point.
+	 */
+	public double[][] LOESS(CompactDataset dataset, double q) {
+		super.SLR(dataset.toDataset());
+		
+		double[] error = new double[1];
+		double[][] slopeInterceptSet = fitLOESS(dataset, q, error);
+		interpolationError = error[0];
+		
+		return slopeInterceptSet;
+	}
+	
+	/**
+	 * LOESS on a compact dataset without touching SampleStats, as above.
+	 * 
+	 * @param dataset Compact dataset.
+	 * @param q Fraction of the compacted points to use per subset.
+	 * @param error Array whose first element receives the interpolation
+	 * error, as getInterpolationError gives it, or null.
+	 * 
+	 * @return Array of slope/intercept pairs, one per compacted point.
+	 */
+	public double[][] fitLOESS(CompactDataset dataset, double q,
+		double[] error) {
+		return fitLOESS(dataset, q, error, null);
+	}
+	
+	/**
+	 * LOESS on a compact dataset without touching SampleStats, reporting to a
+	 * monitor as fitLOESS does.
+	 * 
+	 * @param dataset Compact dataset.
+	 * @param q Fraction of the compacted points to use per subset.
+	 * @param error Array whose first element receives the interpolation
+	 * error, or null.
+	 * @param monitor Monitor of the fit, or null.
+	 * 
+	 * @return Array of slope/intercept pairs, one per compacted point.
+	 * @throws FitCancelledException If the monitor stops the fit.
+	 */
+	public double[][] fitLOESS(CompactDataset dataset, double q,
+		double[] error, FitMonitor monitor) {
+		
+		// Already sorted, with distinct x-values
+		double[][] points = dataset.toDataset();
+		int sampleSize = dataset.size();
+		int subsetSize = subsetSize(sampleSize, q);
+		
+		double[][] slopeInterceptSet = new double[weight][sampleSize];
+		fitPasses(points[0], points[1], dataset.getWeights(), subsetSize,
+			slopeInterceptSet, error, monitor);
+		
+		return slopeInterceptSet;
+	}
+	
+	/**
+	 * Runs the first LOESS pass and the robustness iterations. These refit
+	 * the same sorted data and subsets in place, with the residuals of the
+	 * previous pass weighting down outliers.
+	 * 
+	 * @param priorWeights Weights of the points, multiplied into the
+	 * robustness weights of every pass, or null for none.
+	 * @param monitor Monitor of the fit, or null. Its work is started afresh
+	 * at the local fits of every pass.
+	 * @return Weights of the points in the last pass, or null if it had none.
+	 */
+	private double[] fitPasses(double[] x, double[] y, double[] priorWeights,
+		int subsetSize, double[][] slopeInterceptSet, double[] error,
+		FitMonitor monitor) {
+		
+		int passWork = interpolates(x.length) ? loessVertices : x.length;
+		if (monitor != null) {
+			monitor.start((long) passWork * (1 + loessIterations));
+		}
+		
+		double maxError = fitPass(x, y, priorWeights, subsetSize,
+			slopeInterceptSet, error != null, monitor);
+		
+		double[] robustness = priorWeights;
+		if (loessIterations > 0) {
+			int sampleSize = x.length;
+			double[] weights = new double[sampleSize];
+			double[] scratch = new double[sampleSize];
+			
+			for (int iteration = 0; iteration < loessIterations; iteration++) {
+				if (!robustnessWeights(x, y, slopeInterceptSet, weights, scratch)) {
+					// The passes left over count as done
+					if (monitor != null) {
+						monitor.advance((long) passWork * (loessIterations - iteration));
+					}
+					break;
+				}
+				if (priorWeights != null) {
+					for (int i = 0; i < sampleSize; i++) {
+						weights[i] *= priorWeights[i];
+					}
+				}
+				
+				robustness = weights;
+				maxError = fitPass(x, y, robustness, subsetSize, slopeInterceptSet,
+					error != null, monitor);
+			}
+		}
+		
+		if (error != null) {
+			error[0] = maxError;
+		}
+		
+		return robustness;
+	}
+	
+	/**
+	 * Runs one LOESS pass over the sorted dataset, overwriting every slope and
+	 * intercept.
+	 * 
+	 * @return Interpolation error of the pass if it is measured, otherwise
+	 * zero.
+	 */
+	private double fitPass(double[] x, double[] y, double[] robustness,
+		int subsetSize, double[][] slopeInterceptSet, boolean measureError,
+		FitMonitor monitor) {
+		
+		int sampleSize = x.length;
+		
+		if (interpolates(sampleSize)) {
+			return interpolateLOESS(x, y, robustness, subsetSize, slopeInterceptSet,
+				measureError, monitor);
+		}
+		
+		// Each point in turn is the center of a subset of subsetSize
+		// consecutive points, and weighted lin regression is performed on it.
+		// The center is the second-to-last point of its subset, except near the
+		// ends of the dataset, where the subset stays at the first or last
+		// subsetSize points.
+		//
+		// EXAMPLE: with subsets of 4 points from dataset ABCDE, centers A, B
+		// and C use subset ABCD, D uses BCDE, and E uses BCDE again.
 		//
-		// EXAMPLE: If we have a subset of 4 points ABCD, from dataset ABCDE:
-		// Then sample 3x using A, B, and C as consecutive centers of that subset
-		for (int i = 0; i < subsetSize - 1; i++) {
-			for (int j = 0; j < subsetSize; j++) {
-				subsetDataset[0][j] = dataset[0][j];
-				subsetDataset[1][j] = dataset[1][j];
+		// The local fits are independent, so large enough datasets spread the
+		// centers across the pool, each fit writing its own output entries.
+		//
+		// With nearest-neighbour subsets, the subset of each center starts at
+		// or after that of the center before it, so one sweep of the start
+		// finds them all.
+		if (parallelism <= 1
+			|| (long) sampleSize * subsetSize < parallelThreshold) {
+			int first = 0;
+			for (int i = 0; i < sampleSize; i++) {
+				first = loessNearest ? nearestStart(x, x[i], subsetSize, first,
+					sampleSize)
+					: subsetStart(i, sampleSize, subsetSize);
+				
+				fitLocal(x, y, robustness, first, first + subsetSize, i,
+					slopeInterceptSet, i);
+				
+				if (monitor != null && (i + 1) % CHECK_INTERVAL == 0) {
+					monitor.advance(CHECK_INTERVAL);
+				}
 			}
+			if (monitor != null) {
+				monitor.advance(sampleSize % CHECK_INTERVAL);
+			}
+		} else {
+			// A few leaves per thread lets work stealing even out the load
+			int leavesPerThread = 4;
+			int leafSize = Math.max(1, sampleSize / (parallelism * leavesPerThread));
+			
+			getPool().invoke(new LoessTask(x, y, robustness, subsetSize,
+				loessNearest, slopeInterceptSet, 0, sampleSize, leafSize, monitor));
+		}
+		
+		return 0;
+	}
+	
+	/**
+	 * LOESS fitted exactly at the vertices only, in the manner of Cleveland's
+	 * reference implementation. Between two vertices, the curve is the cubic
+	 * Hermite interpolant of their fitted values and slopes, and each point
+	 * gets the slope and intercept of the tangent to it. The vertices keep
+	 * their exact fits.
+	 * 
+	 * The interpolation is checked against an exact fit at the middle point of
+	 * every cell, the point furthest from the vertices either side of it.
+	 * 
+	 * @return Largest interpolation error found if it is measured, otherwise
+	 * zero.
+	 */
+	private double interpolateLOESS(double[] x, double[] y,
+		double[] robustness, int subsetSize, double[][] slopeInterceptSet,
+		boolean measureError, FitMonitor monitor) {
+		
+		int sampleSize = x.length;
+		
+		// Vertices are few and their subsets large, so each is reported
+		for (int j = 0; j < loessVertices; j++) {
+			int v = vertex(j, sampleSize, loessVertices);
+			int first = windowStart(x, v, subsetSize);
 			
-			calcWeight(subsetDataset[0], subsetWeights, i);
+			fitLocal(x, y, robustness, first, first + subsetSize, v,
+				slopeInterceptSet, v);
 			
-			WLR(subsetDataset, subsetWeights);
-			slopeInterceptSet[0][i] = getSlope();
-			slopeInterceptSet[1][i] = getIntercept();
+			if (monitor != null) {
+				monitor.advance(1);
+			}
 		}
 		
-		// After the initial sampling, we increment the sampling indices
-		// Here, the center is always the second-to-last index
-		// This may lead to slight skewing, but other approaches are arbitrary.
-		//
-		// EXAMPLE: after using A B C as centers, we have to sample D, E.
-		// So subset here is chosen as BCDE, using D as center.
-		// Then, we use BCDE again but with E as the center.
-		for (int i = subsetSize - 1; i < sampleSize; ++i) {
+		double[][] exact = new double[weight][1];
+		double maxError = 0;
+		
+		for (int j = 1; j < loessVertices; j++) {
+			int a = vertex(j - 1, sampleSize, loessVertices);
+			int b = vertex(j, sampleSize, loessVertices);
 			
-			// Loopnum is just a running index from 1 to check for end of dataset.
-			// Kind of a kludge, it just works!
-			if ((loopnum + subsetSize) <= sampleSize) {
-				for (int j = 0; j < subsetSize; j++) {
-					subsetDataset[0][j] = dataset[0][j + loopnum];
-					subsetDataset[1][j] = dataset[1][j + loopnum];
-				}
-
-				calcWeight(subsetDataset[0], subsetWeights, subsetSize - weight);
-				
-				WLR(subsetDataset, subsetWeights);
-				slopeInterceptSet[0][i] = getSlope();
-				slopeInterceptSet[1][i] = getIntercept();
-				loopnum++;
+			for (int i = a + 1; i < b; i++) {
+				interpolate(slopeInterceptSet, a, b, x[a], x[b], x[i], i);
 			}
 			
-			// This else block runs only when we reach the end of the dataset.
-			// It runs similarly to the initial sampling period, except using the
-			// fixed subset of the final couple points.
-			else {
-				for (int j = sampleSize - 1, k = subsetSize - 1; j >= sampleSize-subsetSize; 
-					j--, k--) {
-					subsetDataset[0][k] = dataset[0][j];
-					subsetDataset[1][k] = dataset[1][j];
+			if (measureError && b - a > 1) {
+				if (monitor != null) {
+					monitor.check();
 				}
 				
-				if (i == sampleSize - 1) {
-					calcWeight(subsetDataset[0], subsetWeights, subsetSize - 1);
-				}
-				else {
-					calcWeight(subsetDataset[0], subsetWeights, subsetSize - weight);
-				}
+				int mid = (a + b) >>> 1;
+				int first = windowStart(x, mid, subsetSize);
+				fitLocal(x, y, robustness, first, first + subsetSize, mid, exact, 0);
 				
-				WLR(subsetDataset, subsetWeights);
-				slopeInterceptSet[0][i] = getSlope();
-				slopeInterceptSet[1][i] = getIntercept();
+				maxError = Math.max(maxError, Math.abs(
+					predict(exact, 0, x[mid]) - predict(slopeInterceptSet, mid, x[mid])));
 			}
 		}
 		
-		// All pairs of slopes and intercepts are stored in this array of doubles!
-		return slopeInterceptSet;
+		return maxError;
+	}
+	
+	/**
+	 * Sets the bisquare robustness weights from the residuals of the last
+	 * pass: a point whose residual is r gets weight B(r / 6m), where m is the
+	 * median absolute residual and B(u) = (1 - u^2)^2 for |u| < 1, zero
+	 * otherwise.
+	 * 
+	 * @param robustness Array to write the weights into.
+	 * @param scratch Array of at least the sample size, overwritten.
+	 * @return false if the residuals are already negligible, in which case
+	 * further iterations would change nothing.
+	 */
+	private static boolean robustnessWeights(double[] x, double[] y,
+		double[][] slopeInterceptSet, double[] robustness, double[] scratch) {
+		
+		int sampleSize = x.length;
+		double sum = 0;
+		for (int i = 0; i < sampleSize; i++) {
+			scratch[i] = Math.abs(y[i] - predict(slopeInterceptSet, i, x[i]));
+			sum += scratch[i];
+		}
+		
+		int scale = 6; // residuals of six MADs or more get zero weight
+		double limit = scale * Selection.median(scratch, 0, sampleSize);
+		
+		// More than half the points lie on the curve to within rounding
+		double negligible = 1e-7;
+		if (limit <= negligible * (sum / sampleSize)) {
+			return false;
+		}
+		
+		for (int i = 0; i < sampleSize; i++) {
+			double u = Math.abs(y[i] - predict(slopeInterceptSet, i, x[i])) / limit;
+			double b = 0;
+			
+			if (u < 1) {
+				double square = 1 - (u * u);
+				b = square * square; // Bisquare weight function
+			}
+			
+			robustness[i] = b;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * @return true if LOESS on this many points fits at the vertices only.
+	 */
+	boolean interpolates(int sampleSize) {
+		return loessVertices > 0 && loessVertices < sampleSize;
+	}
+	
+	/**
+	 * @return Index of vertex j of the given number, spread evenly over the
+	 * sorted points from the first to the last. Every cell between two
+	 * vertices holds about the same number of points.
+	 */
+	static int vertex(int j, int sampleSize, int vertices) {
+		return (int)(((long) j * (sampleSize - 1)) / (vertices - 1));
+	}
+	
+	/**
+	 * Interpolates the LOESS curve at x, between vertices a and b whose slopes
+	 * and intercepts are already in slopeInterceptSet. The curve is the cubic
+	 * that passes through both fitted values with the fitted slopes.
+	 * 
+	 * @param slopeInterceptSet Array of slope/intercept pairs.
+	 * @param a Index of the vertex on the left.
+	 * @param b Index of the vertex on the right.
+	 * @param xa x-value of vertex a.
+	 * @param xb x-value of vertex b.
+	 * @param x Predictor value, between xa and xb.
+	 * @param at Index to write the slope and intercept of the curve at x into.
+	 */
+	static void interpolate(double[][] slopeInterceptSet, int a, int b,
+		double xa, double xb, double x, int at) {
+		
+		double ma = slopeInterceptSet[0][a];
+		double mb = slopeInterceptSet[0][b];
+		double ya = predict(slopeInterceptSet, a, xa);
+		double yb = predict(slopeInterceptSet, b, xb);
+		
+		double h = xb - xa;
+		double t = (x - xa) / h;
+		double t2 = t * t;
+		double t3 = t2 * t;
+		
+		// Hermite basis functions and their derivatives with respect to t
+		double h00 = (2 * t3) - (3 * t2) + 1;
+		double h10 = t3 - (2 * t2) + t;
+		double h01 = (3 * t2) - (2 * t3);
+		double h11 = t3 - t2;
+		double d00 = (6 * t2) - (6 * t);
+		double d10 = (3 * t2) - (4 * t) + 1;
+		double d11 = (3 * t2) - (2 * t);
+		
+		double value = (h00 * ya) + (h * ((h10 * ma) + (h11 * mb))) + (h01 * yb);
+		double slope = ((d00 * (ya - yb)) / h) + (d10 * ma) + (d11 * mb);
+		
+		slopeInterceptSet[0][at] = slope;
+		slopeInterceptSet[1][at] = value - (slope * x);
+	}
+	
+	/**
+	 * @return Value at x of the line with the slope and intercept at index i.
+	 */
+	private static double predict(double[][] slopeInterceptSet, int i, double x) {
+		return slopeInterceptSet[1][i] + (slopeInterceptSet[0][i] * x);
+	}
+	
+	/**
+	 * Sets the number of vertices LOESS fits at. The points between two
+	 * vertices are interpolated rather than fitted, so the cost of LOESS no
+	 * longer grows with the product of the sample size and subset size, only
+	 * with that of the vertices and subset size. A few vertices per subset
+	 * width are usually enough for a smooth curve; the error this causes is
+	 * available from getInterpolationError.
+	 * 
+	 * @param vertices Number of vertices, at least two, or zero to fit at
+	 * every point. Datasets of no more points than this are fitted at every
+	 * point.
+	 */
+	public void setLoessVertices(int vertices) {
+		if (vertices < 0 || vertices == 1) {
+			throw new IllegalArgumentException(
+				"Vertices must be zero or at least 2");
+		}
+		
+		this.loessVertices = vertices;
+	}
+	
+	/**
+	 * Sets how LOESS picks the subset of each point. By default the subset is
+	 * the consecutive points with the center second to last, which is cheap
+	 * but skews the fit towards the points before the center, more so near
+	 * the ends of the dataset. Nearest-neighbour subsets are instead the
+	 * subsetSize points with x-values closest to the center's, so they are as
+	 * balanced as the data allows. Finding them all takes one linear sweep.
+	 * 
+	 * @param nearest true for nearest-neighbour subsets.
+	 */
+	public void setLoessNearest(boolean nearest) {
+		this.loessNearest = nearest;
+	}
+	
+	/**
+	 * Sets the number of robustness iterations of LOESS. After the first
+	 * pass, each iteration gives every point a bisquare weight from its
+	 * residual, relative to the median absolute residual, and fits again with
+	 * those weights multiplied into the tricube weights. Outliers then stop
+	 * pulling the curve towards themselves. Cleveland suggests two
+	 * iterations; each costs about as much as the first pass.
+	 * 
+	 * @param iterations Number of iterations, or zero for the plain fit.
+	 */
+	public void setLoessIterations(int iterations) {
+		if (iterations < 0) {
+			throw new IllegalArgumentException("Iterations must not be negative");
+		}
+		
+		this.loessIterations = iterations;
+	}
+	
+	/**
+	 * @return Largest difference between the interpolated curve of the last
+	 * LOESS and the exact fit, at the middle point of each cell between
+	 * vertices, in units of y. Zero if LOESS fitted at every point.
+	 */
+	public double getInterpolationError() {
+		return interpolationError;
+	}
+	
+	/**
+	 * @return Number of points in each LOESS subset: the fraction q of the
+	 * dataset, but at least four.
+	 */
+	static int subsetSize(int sampleSize, double q) {
+		int subsetSize = (int)Math.ceil(q * sampleSize);
+		
+		int minPoint = 4; //must be greater than 4 
+		if (subsetSize < minPoint) {
+			subsetSize = minPoint;
+		}
+		
+		return subsetSize;
+	}
+	
+	/**
+	 * @return First index of the subset of the point at center, of either
+	 * kind.
+	 */
+	private int windowStart(double[] x, int center, int subsetSize) {
+		if (loessNearest) {
+			return nearestStart(x, x[center], subsetSize);
+		}
+		
+		return subsetStart(center, x.length, subsetSize);
+	}
+	
+	/**
+	 * Finds the subset of the subsetSize x-values nearest xc by binary search.
+	 * A subset starting at s is too far left exactly when the point after it
+	 * is nearer than its first point, and moving right only makes that less
+	 * likely, so the first start that is not too far left is the answer.
+	 * 
+	 * @param x Sorted x-values.
+	 * @param xc Predictor value, not necessarily one of the x-values.
+	 * @param subsetSize Number of points in the subset.
+	 * @return First index of the nearest subset. Of two points equally far
+	 * from xc, the left one is taken.
+	 */
+	static int nearestStart(double[] x, double xc, int subsetSize) {
+		int low = 0;
+		int high = x.length - subsetSize;
+		
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (xc - x[mid] > x[mid + subsetSize] - xc) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		
+		return low;
+	}
+	
+	/**
+	 * Finds the same subset as nearestStart by moving a start forward, for
+	 * sweeps over increasing values of xc. The moves over a whole sweep add up
+	 * to at most the sample size.
+	 * 
+	 * @param start First index of the subset of a smaller xc, or zero.
+	 * @param sampleSize Number of x-values, which may not fill the array.
+	 */
+	static int nearestStart(double[] x, double xc, int subsetSize, int start,
+		int sampleSize) {
+		
+		int limit = sampleSize - subsetSize;
+		
+		while (start < limit && xc - x[start] > x[start + subsetSize] - xc) {
+			start++;
+		}
+		
+		return start;
+	}
+	
+	/**
+	 * @return First index of the subset for the given center. The subset
+	 * runs up to one point past the center, unless that would run off either
+	 * end of the dataset.
+	 */
+	static int subsetStart(int center, int sampleSize, int subsetSize) {
+		int ahead = 2; // center is the second-to-last point of its subset
+		
+		return Math.max(0, Math.min(center + ahead - subsetSize,
+			sampleSize - subsetSize));
+	}
+	
+	/**
+	 * Fits the weighted line of one LOESS subset, the sorted points
+	 * [first, last), with tricube weights around the point at center. Works on
+	 * the arrays in place and allocates nothing.
+	 * 
+	 * Since the points are sorted, the furthest point from the center is one
+	 * of the two ends of the subset, so the distances need no sorting. The
+	 * weighted sums are taken about the center point, which keeps them small
+	 * and avoids cancellation when the x-values are large.
+	 * 
+	 * @param x Sorted x-values.
+	 * @param y Corresponding y-values.
+	 * @param robustness Robustness weights of the points, multiplied into the
+	 * tricube weights, or null for none.
+	 * @param first First index of the subset.
+	 * @param last Index after the last point of the subset.
+	 * @param center Index of the center point.
+	 * @param slopeInterceptSet Array to write the slope and intercept into.
+	 * @param at Index to write them at.
+	 */
+	static void fitLocal(double[] x, double[] y, double[] robustness,
+		int first, int last, int center, double[][] slopeInterceptSet, int at) {
+		
+		fitLocal(x, y, robustness, first, last, x[center], y[center],
+			slopeInterceptSet, at);
+	}
+	
+	/**
+	 * Fits the weighted line of one LOESS subset around any predictor value,
+	 * as above.
+	 * 
+	 * @param xc Predictor value the tricube weights are centered on.
+	 * @param yc Any value near the y-values of the subset, for the sums to be
+	 * taken about.
+	 */
+	static void fitLocal(double[] x, double[] y, double[] robustness,
+		int first, int last, double xc, double yc, double[][] slopeInterceptSet,
+		int at) {
+		
+		double maxdist = Math.max(xc - x[first], x[last - 1] - xc);
+		
+		double sw = 0, swx = 0, swy = 0, swxx = 0, swxy = 0;
+		for (int j = first; j < last; j++) {
+			double dx = x[j] - xc;
+			double w = weightFn(Math.abs(dx) / maxdist);
+			if (robustness != null) {
+				w *= robustness[j];
+			}
+			
+			// Points at the edge of the subset, and outliers, have zero weight
+			if (w == 0) {
+				continue;
+			}
+			
+			double dy = y[j] - yc;
+			double wdx = w * dx;
+			sw += w;
+			swx += wdx;
+			swy += w * dy;
+			swxx += wdx * dx;
+			swxy += wdx * dy;
+		}
+		
+		// Every point weighted down as an outlier; fall back to the tricube
+		// weights alone
+		if (sw == 0 && robustness != null) {
+			fitLocal(x, y, null, first, last, xc, yc, slopeInterceptSet, at);
+			return;
+		}
+		
+		// Weighted means and centered sums of squares, about the center point
+		double meanx = swx / sw;
+		double meany = swy / sw;
+		double sxx = swxx - (swx * meanx);
+		double sxy = swxy - (swx * meany);
+		
+		// With a single point of nonzero weight the line is flat through it
+		double beta = (sxx > 0) ? sxy / sxx : 0;
+		double alpha = (yc + meany) - (beta * (xc + meanx));
+		
+		slopeInterceptSet[0][at] = beta;
+		slopeInterceptSet[1][at] = alpha;
 	}
 	
 	/**
@@ -139,6 +849,7 @@ public class LocalRegression extends LinearRegression {
 	 * @return Array of points corresponding to predictor x-values and their
 	 * corresponding predicted y-values from the LOESS slope-intercept pairs.
 	 * Plotting the lines between consecutive points yields the LOESS line.
+	 * @throws DataException If two x-values are equal.
 	 */
 	public double[][] plotLOESS(double[][] dataset, 
 		double[][] slopeInterceptSet) {
@@ -162,54 +873,40 @@ public class LocalRegression extends LinearRegression {
 	}
 	
 	/**
-	 * Modifies an array of weights according to a weight function based around
-	 * a center index from a subset of x-values.
+	 * Plot the LOESS line of a sorted dataset, as plotLOESS does, without
+	 * sorting it again.
+	 * 
+	 * @param dataset Sorted dataset.
+	 * @param slopeInterceptSet Set of slope/intercept pairs from LOESS on the
+	 * same dataset.
 	 * 
-	 * @param subsetx Subset of x-values
-	 * @param weights Set of corresponding weights for the x-values
-	 * @param centerIndex Index to center weights around
+	 * @return Array of predictor x-values and their predicted y-values.
 	 */
-	private void calcWeight(double[] subsetx, double[] weights, 
-		int centerIndex) {
-		
-		int arraySize = weights.length;
+	public double[][] plotLOESS(SortedDataset dataset,
+		double[][] slopeInterceptSet) {
 		
-		double[] distances = new double[arraySize];
-		double[] scaledDistances = new double[arraySize];
+		double[] x = dataset.toDataset()[0];
+		int sampleSize = x.length;
+		double[][] points = new double[weight][sampleSize];
 		
-		// Calculate absolute distance of each x-value from the central x-val
-		for (int i = 0; i < arraySize; i++) {
-			double distance = Math.abs(subsetx[i] - subsetx[centerIndex]);
-			distances[i] = distance;
+		for (int i = 0; i < sampleSize; i++) {
+			points[0][i] = x[i];
+			points[1][i] = predict(slopeInterceptSet, i, x[i]);
 		}
 		
-		scaledDistances = Arrays.copyOf(distances, arraySize);
-
-		// Sort the distances, find max value.
-		Arrays.sort(distances);
-		double maxdist = distances[arraySize - 1];
-		
-		// Scale distances from the maximum value.
-		// Then calculate the weights according to these scaled distances.
-		for (int i = 0; i < arraySize; i++) {
-			scaledDistances[i] = scaledDistances[i] / maxdist;
-			weights[i] = weightFn(scaledDistances[i]);
-		}
+		return points;
 	}
 	
 	/**
 	 * @param x Scaled distance (assumed non-negative)
 	 * @return Weight given by tricube weight function. If dist >=1, return 0.
 	 */
-	private double weightFn(double x) {
-		double cubed = 3.0;
-		int cube = 3;
+	private static double weightFn(double x) {
 		double b = 0;
 		
-		if (x >= 1) {
-		}
-		else {
-			b = Math.pow(1 - Math.pow(x, cubed), cube); // Tricube weight function
+		if (x < 1) {
+			double cube = 1 - (x * x * x);
+			b = cube * cube * cube; // Tricube weight function
 		}
 		
 		return b;
@@ -0,0 +1,121 @@
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Fork/join task that fits the LOESS subsets of a range of center points.
+ * Every local fit reads only the sorted dataset and writes only its own
+ * entries of the output, so the range is split in half until it is no larger
+ * than the leaf size, and the leaves run without any coordination.
+ *
+ * LocalRegression.fitLocal works in place, so the leaves need no scratch
+ * buffers at all. Each leaf reports its centers to the monitor of the fit,
+ * if it has one, every CHECK_INTERVAL of them.
+ */
+public class LoessTask extends RecursiveAction {
+
+	private static final long serialVersionUID = 1L;
+
+	private final double[] x, y, robustness;
+	private final int subsetSize;
+	private final boolean nearest;
+	private final double[][] slopeInterceptSet;
+	private final int from, to;
+	private final int leafSize;
+	private final FitMonitor monitor;
+
+	/**
+	 * @param x
+	 *          Array of predictor values, sorted and distinct.
+	 * @param y
+	 *          Array of response values.
+	 * @param robustness
+	 *          Robustness weights of the points, or null for none.
+	 * @param subsetSize
+	 *          Number of points in each subset.
+	 * @param nearest
+	 *          true for nearest-neighbour subsets, false for consecutive ones.
+	 * @param slopeInterceptSet
+	 *          Output array of slopes and intercepts, one pair per center.
+	 * @param from
+	 *          First center of the range (inclusive).
+	 * @param to
+	 *          Last center of the range (exclusive).
+	 * @param leafSize
+	 *          Largest range fitted without splitting further.
+	 */
+	public LoessTask(double[] x, double[] y, double[] robustness,
+			int subsetSize, boolean nearest, double[][] slopeInterceptSet, int from,
+			int to, int leafSize) {
+		this(x, y, robustness, subsetSize, nearest, slopeInterceptSet, from, to,
+				leafSize, null);
+	}
+
+	/**
+	 * @param x
+	 *          Array of predictor values, sorted and distinct.
+	 * @param y
+	 *          Array of response values.
+	 * @param robustness
+	 *          Robustness weights of the points, or null for none.
+	 * @param subsetSize
+	 *          Number of points in each subset.
+	 * @param nearest
+	 *          true for nearest-neighbour subsets, false for consecutive ones.
+	 * @param slopeInterceptSet
+	 *          Output array of slopes and intercepts, one pair per center.
+	 * @param from
+	 *          First center of the range (inclusive).
+	 * @param to
+	 *          Last center of the range (exclusive).
+	 * @param leafSize
+	 *          Largest range fitted without splitting further.
+	 * @param monitor
+	 *          Monitor of the fit, or null.
+	 */
+	public LoessTask(double[] x, double[] y, double[] robustness,
+			int subsetSize, boolean nearest, double[][] slopeInterceptSet, int from,
+			int to, int leafSize, FitMonitor monitor) {
+		this.x = x;
+		this.y = y;
+		this.robustness = robustness;
+		this.subsetSize = subsetSize;
+		this.nearest = nearest;
+		this.slopeInterceptSet = slopeInterceptSet;
+		this.from = from;
+		this.to = to;
+		this.leafSize = leafSize;
+		this.monitor = monitor;
+	}
+
+	@Override
+	protected void compute() {
+		if (to - from <= leafSize) {
+			int sampleSize = x.length;
+
+			// Nearest-neighbour subsets are swept from the leaf's first one on
+			int first = nearest ? LocalRegression.nearestStart(x, x[from],
+					subsetSize) : 0;
+			for (int i = from; i < to; i++) {
+				first = nearest ? LocalRegression.nearestStart(x, x[i], subsetSize,
+						first, sampleSize) : LocalRegression.subsetStart(i, sampleSize,
+						subsetSize);
+				LocalRegression.fitLocal(x, y, robustness, first,
+						first + subsetSize, i, slopeInterceptSet, i);
+
+				if (monitor != null
+						&& (i - from + 1) % LocalRegression.CHECK_INTERVAL == 0) {
+					monitor.advance(LocalRegression.CHECK_INTERVAL);
+				}
+			}
+			if (monitor != null) {
+				monitor.advance((to - from) % LocalRegression.CHECK_INTERVAL);
+			}
+			return;
+		}
+
+		int mid = (from + to) >>> 1;
+		invokeAll(new LoessTask(x, y, robustness, subsetSize, nearest,
+				slopeInterceptSet, from, mid, leafSize, monitor), new LoessTask(x, y,
+				robustness, subsetSize, nearest, slopeInterceptSet, mid, to, leafSize,
+				monitor));
+	}
+}
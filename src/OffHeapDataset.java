@@ -0,0 +1,169 @@
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Dataset of x, y and optional weight columns that lives outside the Java
+ * heap, in memory-mapped files. The operating system pages the columns in as
+ * they are read, so a dataset can be much larger than the heap, and several
+ * processes fitting the same file share one copy of it.
+ *
+ * A mapping can cover at most 2 GB, so each column is made of segments of
+ * SEGMENT_SIZE doubles. Element i of a column is element
+ * (i & SEGMENT_MASK) of segment (i >> SEGMENT_SHIFT).
+ *
+ * Reads never move the position of the underlying buffers, so a dataset can
+ * be read from any number of threads at once. OffHeapRegression fits on it
+ * directly; ColumnCache.map gives one for any file the readers understand.
+ */
+public class OffHeapDataset {
+
+	// Segments hold 2^27 doubles, or 1 GB
+	static final int SEGMENT_SHIFT = 27;
+	static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+	static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+	private final DoubleBuffer[] x, y, w;
+	private final long size;
+
+	private OffHeapDataset(DoubleBuffer[] x, DoubleBuffer[] y, DoubleBuffer[] w,
+			long size) {
+		this.x = x;
+		this.y = y;
+		this.w = w;
+		this.size = size;
+	}
+
+	/**
+	 * Maps columns of little-endian doubles stored in a file. The mapping stays
+	 * valid after the channel is closed.
+	 *
+	 * @param channel
+	 *          Channel of the file, open for reading.
+	 * @param xOffset
+	 *          Byte offset of the x-values.
+	 * @param yOffset
+	 *          Byte offset of the y-values.
+	 * @param wOffset
+	 *          Byte offset of the weights, or -1 if there are none.
+	 * @param size
+	 *          Number of points.
+	 * @return Dataset over the mapped columns.
+	 * @throws IOException
+	 *           If the file cannot be mapped
+	 */
+	public static OffHeapDataset map(FileChannel channel, long xOffset,
+			long yOffset, long wOffset, long size) throws IOException {
+
+		DoubleBuffer[] x = mapColumn(channel, xOffset, size);
+		DoubleBuffer[] y = mapColumn(channel, yOffset, size);
+		DoubleBuffer[] w = (wOffset < 0) ? null : mapColumn(channel, wOffset, size);
+
+		return new OffHeapDataset(x, y, w, size);
+	}
+
+	private static DoubleBuffer[] mapColumn(FileChannel channel, long offset,
+			long size) throws IOException {
+
+		int segments = (int) ((size + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+		DoubleBuffer[] column = new DoubleBuffer[segments];
+
+		for (int s = 0; s < segments; s++) {
+			long first = (long) s << SEGMENT_SHIFT;
+			long count = Math.min(SEGMENT_SIZE, size - first);
+			column[s] = channel
+					.map(FileChannel.MapMode.READ_ONLY, offset + (8 * first), 8 * count)
+					.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+		}
+
+		return column;
+	}
+
+	/**
+	 * @return Number of points.
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * @return true if the dataset has a weight for every point.
+	 */
+	public boolean hasWeights() {
+		return w != null;
+	}
+
+	/**
+	 * @param index
+	 *          Index of a point.
+	 * @return x-value of the point.
+	 */
+	public double getX(long index) {
+		return x[(int) (index >>> SEGMENT_SHIFT)].get((int) (index & SEGMENT_MASK));
+	}
+
+	/**
+	 * @param index
+	 *          Index of a point.
+	 * @return y-value of the point.
+	 */
+	public double getY(long index) {
+		return y[(int) (index >>> SEGMENT_SHIFT)].get((int) (index & SEGMENT_MASK));
+	}
+
+	/**
+	 * @param index
+	 *          Index of a point.
+	 * @return Weight of the point.
+	 */
+	public double getWeight(long index) {
+		return w[(int) (index >>> SEGMENT_SHIFT)].get((int) (index & SEGMENT_MASK));
+	}
+
+	/**
+	 * Copies x-values into an array.
+	 *
+	 * @param from
+	 *          Index of the first point.
+	 * @param into
+	 *          Array to copy into.
+	 * @param offset
+	 *          Index of the array to copy the first value to.
+	 * @param count
+	 *          Number of values.
+	 */
+	public void copyX(long from, double[] into, int offset, int count) {
+		copy(x, from, into, offset, count);
+	}
+
+	/**
+	 * Copies y-values into an array, as copyX.
+	 */
+	public void copyY(long from, double[] into, int offset, int count) {
+		copy(y, from, into, offset, count);
+	}
+
+	/**
+	 * Copies weights into an array, as copyX.
+	 */
+	public void copyWeights(long from, double[] into, int offset, int count) {
+		copy(w, from, into, offset, count);
+	}
+
+	private static void copy(DoubleBuffer[] column, long from, double[] into,
+			int offset, int count) {
+
+		while (count > 0) {
+			int segment = (int) (from >>> SEGMENT_SHIFT);
+			int index = (int) (from & SEGMENT_MASK);
+			int length = Math.min(count, SEGMENT_SIZE - index);
+
+			column[segment].get(index, into, offset, length);
+
+			from += length;
+			offset += length;
+			count -= length;
+		}
+	}
+}
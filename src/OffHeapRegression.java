@@ -0,0 +1,652 @@
+import java.lang.Math;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Runs the regressions of LinearRegression and LocalRegression on an
+ * OffHeapDataset, reading the mapped columns directly. Heap use does not
+ * grow with the size of the dataset, except for LOESS, whose output has one
+ * slope and intercept per point.
+ *
+ * SLR and WLR stream the columns through small scratch blocks into the same
+ * StatsAccumulator used on the heap, so they give the same results, and run
+ * in parallel above parallelThreshold points.
+ *
+ * RLR is the approximate version, from a sample of pairwise slopes. Its
+ * intercept, the median of y - beta(x) over every point, is found exactly by
+ * radix selection: each pass over the data counts the values under the next
+ * 16 bits of the answer, until few enough are left to select on the heap.
+ *
+ * LOESS needs the dataset sorted by x already, since the columns are read
+ * only. It is the single pass: robustness iterations are not run off the
+ * heap, as their weights would need an array the size of the dataset.
+ * Vertices and nearest-neighbour subsets work as on the heap.
+ */
+public class OffHeapRegression extends LocalRegression {
+
+	// Points copied onto the heap at a time
+	private static final int BLOCK_SIZE = 1 << 12;
+
+	// Radix selection works on this many bits per pass
+	private static final int RADIX_BITS = 16;
+	private static final int RADIX_SIZE = 1 << RADIX_BITS;
+
+	// Radix selection stops counting once this few values are left
+	private static final int SELECT_SIZE = 1 << 20;
+
+	/**
+	 * Simple linear regression on an off-heap dataset.
+	 *
+	 * @param dataset
+	 *          Dataset of x, y.
+	 * @return Result of the fit.
+	 */
+	public RegressionResult fitSLR(OffHeapDataset dataset) {
+		double[] stats = new double[statSize];
+		accumulate(dataset, false).writeStats(stats);
+		return new RegressionResult(stats);
+	}
+
+	/**
+	 * Weighted linear regression on an off-heap dataset, with its weight
+	 * column.
+	 *
+	 * @param dataset
+	 *          Dataset of x, y and weights.
+	 * @return Result of the fit.
+	 * @throws IllegalArgumentException
+	 *           If the dataset has no weights.
+	 */
+	public RegressionResult fitWLR(OffHeapDataset dataset) {
+		if (!dataset.hasWeights()) {
+			throw new IllegalArgumentException("No column of weights found!");
+		}
+
+		double[] stats = new double[statSize];
+		accumulate(dataset, true).writeStats(stats);
+		return new RegressionResult(stats);
+	}
+
+	/**
+	 * Approximate robust linear regression on an off-heap dataset. Works like
+	 * fitRLR(dataset, sampleBudget, seed) on the heap: beta is the median of a
+	 * random sample of pairwise slopes, and alpha the median of y - beta(x).
+	 * If the budget covers every pair, the dataset is small enough to copy
+	 * onto the heap, and the exact RLR is run there instead, as on the heap.
+	 *
+	 * Up to Integer.MAX_VALUE points, pairs are drawn exactly as on the heap,
+	 * so a seed gives the same sample and the same fit on either. Larger
+	 * datasets draw their indices from nextDouble instead, still uniformly.
+	 *
+	 * Note, this algorithm ONLY works if the x-predictors are unique!
+	 *
+	 * @param dataset
+	 *          Dataset of x, y.
+	 * @param sampleBudget
+	 *          Number of pairwise slopes to sample.
+	 * @param seed
+	 *          Seed for the random sampling.
+	 * @return Result of the fit, including its rank error bound.
+	 * @throws IllegalArgumentException
+	 *           If the sample budget is less than one.
+	 */
+	public RegressionResult fitRLR(OffHeapDataset dataset, int sampleBudget,
+			long seed) {
+		if (sampleBudget < 1) {
+			throw new IllegalArgumentException("Sample budget must be at least 1");
+		}
+
+		long sampleSize = dataset.size();
+
+		// The budget covers every pair if n(n - 1) / 2 <= sampleBudget, found
+		// without computing n(n - 1), which overflows above 3e9 points
+		if (sampleSize < 2
+				|| sampleSize - 1 <= ((long) squared * sampleBudget) / sampleSize) {
+			int size = heapSize(dataset);
+			double[][] points = new double[2][size];
+			dataset.copyX(0, points[0], 0, size);
+			dataset.copyY(0, points[1], 0, size);
+			return fitRLR(points);
+		}
+
+		double[] slopes = new double[sampleBudget];
+		Random random = new Random(seed);
+
+		boolean heapSized = sampleSize <= Integer.MAX_VALUE;
+
+		// Draw pairs uniformly, with replacement, as on the heap
+		for (int k = 0; k < sampleBudget; k++) {
+			long i, j;
+			if (heapSized) {
+				i = random.nextInt((int) sampleSize);
+				j = random.nextInt((int) sampleSize - 1);
+			} else {
+				i = (long) (random.nextDouble() * sampleSize);
+				j = (long) (random.nextDouble() * (sampleSize - 1));
+			}
+			if (j >= i) {
+				j++;
+			}
+
+			slopes[k] = (dataset.getY(j) - dataset.getY(i))
+					/ (dataset.getX(j) - dataset.getX(i));
+		}
+
+		double beta = Selection.median(slopes, 0, sampleBudget);
+		double bound = Math.sqrt(Math.log(squared / (1 - rankErrorConfidence))
+				/ (squared * sampleBudget));
+
+		// Find median of intercepts; set equal to alpha.
+		double alpha = medianIntercept(dataset, beta);
+
+		double[] stats = new double[statSize];
+		accumulate(dataset, false).writeStats(stats);
+		stats[0] = beta; // Slope of RLR
+		stats[1] = alpha; // Intercept of RLR
+
+		return new RegressionResult(stats, bound);
+	}
+
+	/**
+	 * LOESS on an off-heap dataset, fitting the same local subsets as
+	 * fitLOESS does on the heap. The centers are taken a block at a time: the
+	 * points of all their subsets are copied from the mapped columns into a
+	 * scratch buffer, and each subset is fitted there in place. Large datasets
+	 * are split across the pool, each task with scratch buffers of its own.
+	 *
+	 * If vertices are set, only they are fitted, and the points between them
+	 * are interpolated as on the heap.
+	 *
+	 * @param dataset
+	 *          Dataset of x, y, sorted by x with no two x-values equal.
+	 * @param q
+	 *          Fraction of dataset to use per subset, as in LOESS.
+	 * @return Array of slope/intercept pairs, one per point.
+	 * @throws DataException
+	 *           If the x-values are not strictly increasing.
+	 * @throws IllegalArgumentException
+	 *           If the dataset has more points than an array can hold.
+	 */
+	public double[][] fitLOESS(OffHeapDataset dataset, double q) {
+		return fitLOESS(dataset, q, null);
+	}
+
+	/**
+	 * LOESS on an off-heap dataset, as above, that also gives the
+	 * interpolation error when vertices are set.
+	 *
+	 * @param dataset
+	 *          Dataset of x, y, sorted by x with no two x-values equal.
+	 * @param q
+	 *          Fraction of dataset to use per subset, as in LOESS.
+	 * @param error
+	 *          Array whose first element receives the interpolation error, as
+	 *          getInterpolationError gives it, or null.
+	 * @return Array of slope/intercept pairs, one per point.
+	 * @throws DataException
+	 *           If the x-values are not strictly increasing.
+	 * @throws IllegalArgumentException
+	 *           If the dataset has more points than an array can hold.
+	 */
+	public double[][] fitLOESS(OffHeapDataset dataset, double q, double[] error) {
+		int sampleSize = heapSize(dataset);
+		checkSorted(dataset);
+
+		int subsetSize = subsetSize(sampleSize, q);
+
+		if (interpolates(sampleSize)) {
+			return interpolateLOESS(dataset, subsetSize, error);
+		}
+		if (error != null) {
+			error[0] = 0;
+		}
+
+		double[][] slopeInterceptSet = new double[weight][sampleSize];
+
+		LoessBlockTask task = new LoessBlockTask(dataset, subsetSize,
+				loessNearest, slopeInterceptSet, 0, sampleSize, sampleSize);
+		if (parallelism <= 1
+				|| (long) sampleSize * subsetSize < parallelThreshold) {
+			task.compute();
+		} else {
+			// Leaves cover whole blocks, a few per thread
+			int leavesPerThread = 4;
+			int leafSize = Math.max(BLOCK_SIZE, sampleSize
+					/ (parallelism * leavesPerThread));
+			getPool().invoke(
+					new LoessBlockTask(dataset, subsetSize, loessNearest,
+							slopeInterceptSet, 0, sampleSize, leafSize));
+		}
+
+		return slopeInterceptSet;
+	}
+
+	/**
+	 * Off-heap version of LocalRegression.interpolateLOESS. Each vertex and
+	 * each cell's middle point has its subset copied onto the heap to be
+	 * fitted; the x-values of the points in between are streamed through a
+	 * scratch block.
+	 */
+	private double[][] interpolateLOESS(OffHeapDataset dataset, int subsetSize,
+			double[] error) {
+
+		int sampleSize = heapSize(dataset);
+		double[][] slopeInterceptSet = new double[weight][sampleSize];
+		double[] xs = new double[Math.max(subsetSize, BLOCK_SIZE)];
+		double[] ys = new double[subsetSize];
+
+		for (int j = 0; j < loessVertices; j++) {
+			int v = vertex(j, sampleSize, loessVertices);
+			fitSubset(dataset, v, subsetSize, loessNearest, xs, ys,
+					slopeInterceptSet, v);
+		}
+
+		// The cell [a, b] holds the points up to b
+		int cell = 1;
+		int a = 0;
+		int b = vertex(cell, sampleSize, loessVertices);
+		double xa = dataset.getX(a);
+		double xb = dataset.getX(b);
+
+		for (int from = 0; from < sampleSize; from += BLOCK_SIZE) {
+			int count = Math.min(BLOCK_SIZE, sampleSize - from);
+			dataset.copyX(from, xs, 0, count);
+
+			for (int i = 0; i < count; i++) {
+				int index = from + i;
+				if (index == b && cell + 1 < loessVertices) {
+					cell++;
+					a = b;
+					b = vertex(cell, sampleSize, loessVertices);
+					xa = xb;
+					xb = dataset.getX(b);
+				} else if (index > a && index < b) {
+					interpolate(slopeInterceptSet, a, b, xa, xb, xs[i], index);
+				}
+			}
+		}
+
+		if (error != null) {
+			double[][] exact = new double[weight][1];
+			double maxError = 0;
+
+			for (int j = 1; j < loessVertices; j++) {
+				a = vertex(j - 1, sampleSize, loessVertices);
+				b = vertex(j, sampleSize, loessVertices);
+				if (b - a > 1) {
+					int mid = (a + b) >>> 1;
+					fitSubset(dataset, mid, subsetSize, loessNearest, xs, ys, exact,
+							0);
+
+					double x = dataset.getX(mid);
+					double exactY = exact[1][0] + (exact[0][0] * x);
+					double interpolatedY = slopeInterceptSet[1][mid]
+							+ (slopeInterceptSet[0][mid] * x);
+					maxError = Math.max(maxError, Math.abs(exactY - interpolatedY));
+				}
+			}
+
+			error[0] = maxError;
+		}
+
+		return slopeInterceptSet;
+	}
+
+	/**
+	 * Copies the LOESS subset of one center onto the heap and fits it.
+	 */
+	private static void fitSubset(OffHeapDataset dataset, int center,
+			int subsetSize, boolean nearest, double[] xs, double[] ys,
+			double[][] slopeInterceptSet, int at) {
+
+		int first = windowStart(dataset, center, subsetSize, nearest);
+		dataset.copyX(first, xs, 0, subsetSize);
+		dataset.copyY(first, ys, 0, subsetSize);
+
+		fitLocal(xs, ys, null, 0, subsetSize, center - first, slopeInterceptSet,
+				at);
+	}
+
+	/**
+	 * @return First index of the LOESS subset of the point at center, of
+	 *         either kind.
+	 */
+	private static int windowStart(OffHeapDataset dataset, int center,
+			int subsetSize, boolean nearest) {
+
+		int sampleSize = heapSize(dataset);
+		if (!nearest) {
+			return subsetStart(center, sampleSize, subsetSize);
+		}
+
+		// Binary search as in LocalRegression.nearestStart, on the mapped column
+		double xc = dataset.getX(center);
+		int low = 0;
+		int high = sampleSize - subsetSize;
+
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (xc - dataset.getX(mid) > dataset.getX(mid + subsetSize) - xc) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * Accumulates every point of the dataset, in parallel if it is large
+	 * enough.
+	 */
+	private StatsAccumulator accumulate(OffHeapDataset dataset, boolean weighted) {
+		long sampleSize = dataset.size();
+
+		if (parallelism <= 1 || sampleSize < parallelThreshold) {
+			return new BlockTask(dataset, weighted, 0, sampleSize, sampleSize)
+					.compute();
+		}
+
+		int chunksPerThread = 4;
+		long leafSize = Math.max(minChunkSize, sampleSize
+				/ (parallelism * chunksPerThread));
+
+		return getPool().invoke(
+				new BlockTask(dataset, weighted, 0, sampleSize, leafSize));
+	}
+
+	/**
+	 * @return Number of points in the dataset, for the fits whose output or
+	 *         scratch is indexed by point.
+	 * @throws IllegalArgumentException
+	 *           If the dataset has more points than an array can hold.
+	 */
+	private static int heapSize(OffHeapDataset dataset) {
+		long sampleSize = dataset.size();
+		if (sampleSize > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Dataset of " + sampleSize
+					+ " points is too large to fit on the heap");
+		}
+
+		return (int) sampleSize;
+	}
+
+	private static void checkSorted(OffHeapDataset dataset) {
+		long sampleSize = dataset.size();
+		double[] block = new double[BLOCK_SIZE];
+		double previous = Double.NEGATIVE_INFINITY;
+
+		for (long from = 0; from < sampleSize; from += BLOCK_SIZE) {
+			int count = (int) Math.min(BLOCK_SIZE, sampleSize - from);
+			dataset.copyX(from, block, 0, count);
+
+			for (int i = 0; i < count; i++) {
+				if (block[i] == previous) {
+					throw new DataException(DataException.Reason.DUPLICATE_X,
+							"Duplicate X values! Cannot perform regression!");
+				} else if (!(block[i] > previous)) {
+					throw new DataException(DataException.Reason.UNSORTED,
+							"X values must be sorted in ascending order!");
+				}
+				previous = block[i];
+			}
+		}
+	}
+
+	/**
+	 * @return Median of y - beta(x) over every point of the dataset. For an
+	 *         even number of points this is the mean of the two middle values.
+	 */
+	private static double medianIntercept(OffHeapDataset dataset, double beta) {
+		long sampleSize = dataset.size();
+		int half = 2;
+		long upperRank = sampleSize / half;
+
+		double upper = selectIntercept(dataset, beta, upperRank);
+		if (sampleSize % half == 1) {
+			return upper;
+		}
+
+		// The lower middle value is the largest value below the upper one, or
+		// the upper one itself if it occurs more than once below upperRank + 1.
+		long below = 0;
+		double lower = Double.NEGATIVE_INFINITY;
+		double[] xs = new double[BLOCK_SIZE];
+		double[] ys = new double[BLOCK_SIZE];
+		for (long from = 0; from < sampleSize; from += BLOCK_SIZE) {
+			int count = (int) Math.min(BLOCK_SIZE, sampleSize - from);
+			dataset.copyX(from, xs, 0, count);
+			dataset.copyY(from, ys, 0, count);
+
+			for (int i = 0; i < count; i++) {
+				double value = ys[i] - (beta * xs[i]);
+				if (value < upper) {
+					below++;
+					lower = Math.max(lower, value);
+				}
+			}
+		}
+		if (below < upperRank) {
+			lower = upper;
+		}
+
+		return (lower + upper) / half;
+	}
+
+	/**
+	 * Finds the value of a given rank among y - beta(x) by radix selection
+	 * on the sortable bits of the values.
+	 */
+	private static double selectIntercept(OffHeapDataset dataset, double beta,
+			long rank) {
+
+		long sampleSize = dataset.size();
+		double[] xs = new double[BLOCK_SIZE];
+		double[] ys = new double[BLOCK_SIZE];
+		long[] counts = new long[RADIX_SIZE];
+
+		// Values whose top (64 - shift) key bits equal prefix are still in the
+		// running; matching counts them.
+		long prefix = 0;
+		int shift = Long.SIZE;
+		long matching = sampleSize;
+
+		while (matching > SELECT_SIZE && shift > 0) {
+			int next = shift - RADIX_BITS;
+			Arrays.fill(counts, 0);
+
+			for (long from = 0; from < sampleSize; from += BLOCK_SIZE) {
+				int count = (int) Math.min(BLOCK_SIZE, sampleSize - from);
+				dataset.copyX(from, xs, 0, count);
+				dataset.copyY(from, ys, 0, count);
+
+				for (int i = 0; i < count; i++) {
+					long key = sortableKey(ys[i] - (beta * xs[i]));
+					if (shift == Long.SIZE || (key >>> shift) == prefix) {
+						counts[(int) ((key >>> next) & (RADIX_SIZE - 1))]++;
+					}
+				}
+			}
+
+			// Find the digit holding the rank
+			int digit = 0;
+			while (rank >= counts[digit]) {
+				rank -= counts[digit++];
+			}
+
+			prefix = (shift == Long.SIZE) ? digit : (prefix << RADIX_BITS) | digit;
+			shift = next;
+			matching = counts[digit];
+		}
+
+		// Every bit is known, so the value is too
+		if (shift == 0) {
+			return fromSortableKey(prefix);
+		}
+
+		// Few enough values are left to select among them on the heap
+		double[] values = new double[(int) matching];
+		int found = 0;
+		for (long from = 0; from < sampleSize; from += BLOCK_SIZE) {
+			int count = (int) Math.min(BLOCK_SIZE, sampleSize - from);
+			dataset.copyX(from, xs, 0, count);
+			dataset.copyY(from, ys, 0, count);
+
+			for (int i = 0; i < count; i++) {
+				double value = ys[i] - (beta * xs[i]);
+				if (shift == Long.SIZE || (sortableKey(value) >>> shift) == prefix) {
+					values[found++] = value;
+				}
+			}
+		}
+
+		return Selection.select(values, 0, found, (int) rank);
+	}
+
+	/**
+	 * @return Bits of a double, flipped so that they compare as unsigned
+	 *         longs in the same order as the doubles.
+	 */
+	private static long sortableKey(double value) {
+		long bits = Double.doubleToLongBits(value);
+		return bits ^ ((bits >> 63) | Long.MIN_VALUE);
+	}
+
+	private static double fromSortableKey(long key) {
+		return Double.longBitsToDouble((key < 0) ? key ^ Long.MIN_VALUE : ~key);
+	}
+
+	/**
+	 * Accumulates the points [from, to) of an off-heap dataset, copying them
+	 * onto the heap a block at a time. Splits in two, as AccumulateTask does,
+	 * until ranges are at most leafSize long.
+	 */
+	private static class BlockTask extends RecursiveTask<StatsAccumulator> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final OffHeapDataset dataset;
+		private final boolean weighted;
+		private final long from, to, leafSize;
+
+		BlockTask(OffHeapDataset dataset, boolean weighted, long from, long to,
+				long leafSize) {
+			this.dataset = dataset;
+			this.weighted = weighted;
+			this.from = from;
+			this.to = to;
+			this.leafSize = leafSize;
+		}
+
+		@Override
+		protected StatsAccumulator compute() {
+			if (to - from <= leafSize) {
+				return accumulate();
+			}
+
+			long mid = (from + to) >>> 1;
+			BlockTask left = new BlockTask(dataset, weighted, from, mid, leafSize);
+			left.fork();
+
+			StatsAccumulator right = new BlockTask(dataset, weighted, mid, to,
+					leafSize).compute();
+			StatsAccumulator result = left.join();
+			result.merge(right);
+			return result;
+		}
+
+		private StatsAccumulator accumulate() {
+			StatsAccumulator accumulator = new StatsAccumulator();
+			double[] xs = new double[BLOCK_SIZE];
+			double[] ys = new double[BLOCK_SIZE];
+			double[] ws = weighted ? new double[BLOCK_SIZE] : null;
+
+			for (long start = from; start < to; start += BLOCK_SIZE) {
+				int count = (int) Math.min(BLOCK_SIZE, to - start);
+				dataset.copyX(start, xs, 0, count);
+				dataset.copyY(start, ys, 0, count);
+				if (weighted) {
+					dataset.copyWeights(start, ws, 0, count);
+				}
+
+				accumulator.add(xs, ys, ws, 0, count);
+			}
+
+			return accumulator;
+		}
+	}
+
+	/**
+	 * Fits the LOESS subsets of the centers [from, to) of an off-heap
+	 * dataset, block by block, splitting in half until ranges are at most
+	 * leafSize long. Each leaf has its own scratch buffers.
+	 */
+	private static class LoessBlockTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final OffHeapDataset dataset;
+		private final int subsetSize;
+		private final boolean nearest;
+		private final double[][] slopeInterceptSet;
+		private final int from, to, leafSize;
+
+		LoessBlockTask(OffHeapDataset dataset, int subsetSize, boolean nearest,
+				double[][] slopeInterceptSet, int from, int to, int leafSize) {
+			this.dataset = dataset;
+			this.subsetSize = subsetSize;
+			this.nearest = nearest;
+			this.slopeInterceptSet = slopeInterceptSet;
+			this.from = from;
+			this.to = to;
+			this.leafSize = leafSize;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= leafSize) {
+				fitRange();
+				return;
+			}
+
+			int mid = (from + to) >>> 1;
+			invokeAll(new LoessBlockTask(dataset, subsetSize, nearest,
+					slopeInterceptSet, from, mid, leafSize), new LoessBlockTask(
+					dataset, subsetSize, nearest, slopeInterceptSet, mid, to, leafSize));
+		}
+
+		private void fitRange() {
+			int sampleSize = heapSize(dataset);
+
+			// The subsets of BLOCK_SIZE consecutive centers span at most
+			// BLOCK_SIZE - 1 + subsetSize points. Nearest-neighbour subsets only
+			// contain their centers, so they may reach subsetSize - 1 points
+			// further before the first center.
+			int span = BLOCK_SIZE + (nearest ? 2 * subsetSize : subsetSize);
+			double[] xs = new double[span];
+			double[] ys = new double[span];
+
+			for (int start = from; start < to; start += BLOCK_SIZE) {
+				int end = Math.min(start + BLOCK_SIZE, to);
+				int low = windowStart(dataset, start, subsetSize, nearest);
+				int high = windowStart(dataset, end - 1, subsetSize, nearest)
+						+ subsetSize;
+
+				dataset.copyX(low, xs, 0, high - low);
+				dataset.copyY(low, ys, 0, high - low);
+
+				// Nearest-neighbour subsets are swept through the scratch block
+				int first = 0;
+				for (int i = start; i < end; i++) {
+					first = nearest ? nearestStart(xs, xs[i - low], subsetSize, first,
+							high - low) : subsetStart(i, sampleSize, subsetSize) - low;
+					fitLocal(xs, ys, null, first, first + subsetSize, i - low,
+							slopeInterceptSet, i);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,280 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Sorts columns of a dataset by their x-values, moving the y-values (and
+ * weights, if any) along with them. Works on primitive arrays throughout, so
+ * nothing is boxed.
+ *
+ * The sort is a stable merge sort that carries each key's original index
+ * alongside it. The resulting permutation is then applied to the other
+ * columns. Sorting takes O(n log n) time and O(n) extra memory. For large
+ * arrays, both the sorting of the halves and the merging can be run in
+ * parallel on a ForkJoinPool.
+ *
+ * See: https://en.wikipedia.org/wiki/Merge_sort
+ */
+public class PairedSort {
+
+	// Ranges at most this long are insertion sorted
+	private static final int INSERTION_SIZE = 32;
+
+	// Ranges smaller than this are sorted or merged sequentially, even when a
+	// pool is given.
+	private static final int PARALLEL_SIZE = 1 << 13;
+
+	/**
+	 * Sorts x in ascending order, applying the same reordering to y and w.
+	 *
+	 * @param x
+	 *          Array of predictor values, sorted in place.
+	 * @param y
+	 *          Array of response values, reordered to match x.
+	 * @param w
+	 *          Array of weights reordered to match x, or null if there are none.
+	 * @param pool
+	 *          Pool to sort in parallel on, or null to sort sequentially.
+	 * @return Original index of each point, in the new order.
+	 */
+	public static int[] sort(double[] x, double[] y, double[] w,
+			ForkJoinPool pool) {
+		int[] order = sortKeys(x, pool);
+
+		permute(y, order);
+		if (w != null) {
+			permute(w, order);
+		}
+
+		return order;
+	}
+
+	/**
+	 * @param keys
+	 *          Array of keys. Left unchanged.
+	 * @param pool
+	 *          Pool to sort in parallel on, or null to sort sequentially.
+	 * @return Indices of the keys in ascending order of key. Equal keys keep
+	 *         their original order.
+	 */
+	public static int[] order(double[] keys, ForkJoinPool pool) {
+		return sortKeys(keys.clone(), pool);
+	}
+
+	/**
+	 * Reorders an array so that element i becomes the element at order[i].
+	 *
+	 * @param column
+	 *          Array to reorder in place.
+	 * @param order
+	 *          Permutation of the indices of the array.
+	 */
+	public static void permute(double[] column, int[] order) {
+		double[] permuted = new double[column.length];
+
+		for (int i = 0; i < order.length; i++) {
+			permuted[i] = column[order[i]];
+		}
+
+		System.arraycopy(permuted, 0, column, 0, column.length);
+	}
+
+	/**
+	 * Sorts keys in place and returns the permutation that was applied.
+	 */
+	private static int[] sortKeys(double[] keys, ForkJoinPool pool) {
+		int size = keys.length;
+		int[] index = new int[size];
+		for (int i = 0; i < size; i++) {
+			index[i] = i;
+		}
+
+		// The scratch arrays start out as copies; the sort swaps the roles of
+		// the two pairs at each level of recursion.
+		double[] keyScratch = keys.clone();
+		int[] indexScratch = index.clone();
+
+		if (pool == null || size < PARALLEL_SIZE) {
+			sortInto(keyScratch, indexScratch, keys, index, 0, size);
+		} else {
+			pool.invoke(new SortTask(keyScratch, indexScratch, keys, index, 0, size));
+		}
+
+		return index;
+	}
+
+	/**
+	 * Sorts the range [from, to), leaving the result in dstKeys/dstIndex. The
+	 * src arrays must hold the same data as the dst arrays on entry, and are
+	 * used as scratch space.
+	 */
+	private static void sortInto(double[] srcKeys, int[] srcIndex,
+			double[] dstKeys, int[] dstIndex, int from, int to) {
+
+		if (to - from <= INSERTION_SIZE) {
+			insertionSort(dstKeys, dstIndex, from, to);
+			return;
+		}
+
+		int mid = (from + to) >>> 1;
+		sortInto(dstKeys, dstIndex, srcKeys, srcIndex, from, mid);
+		sortInto(dstKeys, dstIndex, srcKeys, srcIndex, mid, to);
+		merge(srcKeys, srcIndex, from, mid, mid, to, dstKeys, dstIndex, from);
+	}
+
+	private static void insertionSort(double[] keys, int[] index, int from,
+			int to) {
+		for (int i = from + 1; i < to; i++) {
+			double key = keys[i];
+			int value = index[i];
+
+			int j = i - 1;
+			while (j >= from && keys[j] > key) {
+				keys[j + 1] = keys[j];
+				index[j + 1] = index[j];
+				j--;
+			}
+
+			keys[j + 1] = key;
+			index[j + 1] = value;
+		}
+	}
+
+	/**
+	 * Merges the sorted runs [from1, to1) and [from2, to2) of src into dst,
+	 * starting at index at. On equal keys the first run goes first.
+	 */
+	private static void merge(double[] srcKeys, int[] srcIndex, int from1,
+			int to1, int from2, int to2, double[] dstKeys, int[] dstIndex, int at) {
+
+		int i = from1;
+		int j = from2;
+		int k = at;
+
+		while (i < to1 && j < to2) {
+			if (srcKeys[j] < srcKeys[i]) {
+				dstKeys[k] = srcKeys[j];
+				dstIndex[k++] = srcIndex[j++];
+			} else {
+				dstKeys[k] = srcKeys[i];
+				dstIndex[k++] = srcIndex[i++];
+			}
+		}
+
+		System.arraycopy(srcKeys, i, dstKeys, k, to1 - i);
+		System.arraycopy(srcIndex, i, dstIndex, k, to1 - i);
+		k += to1 - i;
+		System.arraycopy(srcKeys, j, dstKeys, k, to2 - j);
+		System.arraycopy(srcIndex, j, dstIndex, k, to2 - j);
+	}
+
+	/**
+	 * @return First index in the sorted range [from, to) whose key is at least
+	 *         (or, if upper, greater than) the given key.
+	 */
+	private static int search(double[] keys, int from, int to, double key,
+			boolean upper) {
+		while (from < to) {
+			int mid = (from + to) >>> 1;
+			if (keys[mid] < key || (upper && keys[mid] == key)) {
+				from = mid + 1;
+			} else {
+				to = mid;
+			}
+		}
+
+		return from;
+	}
+
+	/**
+	 * Parallel version of sortInto: sorts both halves in parallel, then merges
+	 * them in parallel.
+	 */
+	private static class SortTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final double[] srcKeys, dstKeys;
+		private final int[] srcIndex, dstIndex;
+		private final int from, to;
+
+		SortTask(double[] srcKeys, int[] srcIndex, double[] dstKeys,
+				int[] dstIndex, int from, int to) {
+			this.srcKeys = srcKeys;
+			this.srcIndex = srcIndex;
+			this.dstKeys = dstKeys;
+			this.dstIndex = dstIndex;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from < PARALLEL_SIZE) {
+				sortInto(srcKeys, srcIndex, dstKeys, dstIndex, from, to);
+				return;
+			}
+
+			int mid = (from + to) >>> 1;
+			invokeAll(new SortTask(dstKeys, dstIndex, srcKeys, srcIndex, from, mid),
+					new SortTask(dstKeys, dstIndex, srcKeys, srcIndex, mid, to));
+
+			new MergeTask(srcKeys, srcIndex, from, mid, mid, to, dstKeys, dstIndex,
+					from).compute();
+		}
+	}
+
+	/**
+	 * Parallel version of merge. The longer run is split at its middle key,
+	 * the matching split point of the other run is found by binary search, and
+	 * the two halves are merged in parallel.
+	 */
+	private static class MergeTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final double[] srcKeys, dstKeys;
+		private final int[] srcIndex, dstIndex;
+		private final int from1, to1, from2, to2, at;
+
+		MergeTask(double[] srcKeys, int[] srcIndex, int from1, int to1,
+				int from2, int to2, double[] dstKeys, int[] dstIndex, int at) {
+			this.srcKeys = srcKeys;
+			this.srcIndex = srcIndex;
+			this.from1 = from1;
+			this.to1 = to1;
+			this.from2 = from2;
+			this.to2 = to2;
+			this.dstKeys = dstKeys;
+			this.dstIndex = dstIndex;
+			this.at = at;
+		}
+
+		@Override
+		protected void compute() {
+			int size1 = to1 - from1;
+			int size2 = to2 - from2;
+
+			if (size1 + size2 < PARALLEL_SIZE) {
+				merge(srcKeys, srcIndex, from1, to1, from2, to2, dstKeys, dstIndex, at);
+				return;
+			}
+
+			// Split so that every key in the lower halves goes before every key
+			// in the upper halves, keeping keys of the first run ahead of equal
+			// keys of the second.
+			int split1, split2;
+			if (size1 >= size2) {
+				split1 = (from1 + to1) >>> 1;
+				split2 = search(srcKeys, from2, to2, srcKeys[split1], false);
+			} else {
+				split2 = (from2 + to2) >>> 1;
+				split1 = search(srcKeys, from1, to1, srcKeys[split2], true);
+			}
+
+			int splitAt = at + (split1 - from1) + (split2 - from2);
+			invokeAll(new MergeTask(srcKeys, srcIndex, from1, split1, from2, split2,
+					dstKeys, dstIndex, at), new MergeTask(srcKeys, srcIndex, split1, to1,
+					split2, to2, dstKeys, dstIndex, splitAt));
+		}
+	}
+}
@@ -0,0 +1,139 @@
+/**
+ * Immutable result of a regression fit. Holds the same statistics as the
+ * SampleStats array of LinearRegression: beta, alpha, r^2, avgx, avgy, stdx,
+ * stdy. The regression line is given by y = alpha + beta(x).
+ *
+ * Results can be shared freely between threads.
+ */
+public final class RegressionResult {
+
+	// numeric representations of stats element
+	private static final int BETAN = 0;
+	private static final int ALPHAN = 1;
+	private static final int RSQUAREN = 2;
+	private static final int AVGXN = 3;
+	private static final int AVGYN = 4;
+	private static final int STDXN = 5;
+	private static final int STDYN = 6;
+	private static final int STAT_SIZE = 7;
+
+	private final double beta, alpha, rSquare;
+	private final double avgx, avgy, stdx, stdy;
+	private final double rankErrorBound;
+
+	/**
+	 * @param stats
+	 *          Array of beta, alpha, r^2, avgx, avgy, stdx, stdy. Copied.
+	 * @param rankErrorBound
+	 *          Rank error bound of an approximate robust fit, or zero.
+	 */
+	public RegressionResult(double[] stats, double rankErrorBound) {
+		this.beta = stats[BETAN];
+		this.alpha = stats[ALPHAN];
+		this.rSquare = stats[RSQUAREN];
+		this.avgx = stats[AVGXN];
+		this.avgy = stats[AVGYN];
+		this.stdx = stats[STDXN];
+		this.stdy = stats[STDYN];
+		this.rankErrorBound = rankErrorBound;
+	}
+
+	/**
+	 * @param stats
+	 *          Array of beta, alpha, r^2, avgx, avgy, stdx, stdy. Copied.
+	 */
+	public RegressionResult(double[] stats) {
+		this(stats, 0);
+	}
+
+	/**
+	 * @return Gives regression slope
+	 */
+	public double getSlope() {
+		return beta;
+	}
+
+	/**
+	 * @return Gives regression intercept
+	 */
+	public double getIntercept() {
+		return alpha;
+	}
+
+	/**
+	 * @return Square of the sample correlation coefficient
+	 */
+	public double getRSquare() {
+		return rSquare;
+	}
+
+	/**
+	 * @return Sample mean of x
+	 */
+	public double getAvgX() {
+		return avgx;
+	}
+
+	/**
+	 * @return Sample mean of y
+	 */
+	public double getAvgY() {
+		return avgy;
+	}
+
+	/**
+	 * @return Sample standard deviation of x
+	 */
+	public double getStdX() {
+		return stdx;
+	}
+
+	/**
+	 * @return Sample standard deviation of y
+	 */
+	public double getStdY() {
+		return stdy;
+	}
+
+	/**
+	 * @return Rank error bound of the slope, as a fraction of all pairwise
+	 *         slopes, for approximate robust fits. Zero for every other fit.
+	 */
+	public double getRankErrorBound() {
+		return rankErrorBound;
+	}
+
+	/**
+	 * @param x
+	 *          Predictor value.
+	 * @return Value of the regression line at x.
+	 */
+	public double predict(double x) {
+		return alpha + (beta * x);
+	}
+
+	/**
+	 * Writes the statistics into an array, in SampleStats ordering.
+	 *
+	 * @param stats
+	 *          Array of at least seven elements to write into.
+	 */
+	public void copyInto(double[] stats) {
+		stats[BETAN] = beta;
+		stats[ALPHAN] = alpha;
+		stats[RSQUAREN] = rSquare;
+		stats[AVGXN] = avgx;
+		stats[AVGYN] = avgy;
+		stats[STDXN] = stdx;
+		stats[STDYN] = stdy;
+	}
+
+	/**
+	 * @return New array of the statistics, in SampleStats ordering.
+	 */
+	public double[] toArray() {
+		double[] stats = new double[STAT_SIZE];
+		copyInto(stats);
+		return stats;
+	}
+}
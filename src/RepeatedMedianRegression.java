@@ -0,0 +1,111 @@
+/**
+ * Performs Siegel's repeated median regression. For each point, the median
+ * slope of the lines through it and every other point is found; the slope of
+ * the regression line is the median of these medians, and likewise for the
+ * intercept. Its breakdown point is 50%, compared to about 29% for the
+ * Theil-Sen estimator used by RLR.
+ * 
+ * The inner medians are independent of each other, so they are computed in
+ * parallel on the ForkJoinPool of LinearRegression. Each one is found with
+ * Selection rather than by sorting. The whole fit takes O(n^2) time and
+ * O(n) memory per thread.
+ * 
+ * See: https://en.wikipedia.org/wiki/Repeated_median_regression
+ */
+public class RepeatedMedianRegression extends LinearRegression {
+
+	// Datasets with at least this many points have their inner medians
+	// computed in parallel. Each point costs O(n) work, so this is far lower
+	// than the threshold for the O(n) fits.
+	int parallelPoints = 512;
+
+	/**
+	 * Repeated median regression, edits SampleStats array with values of beta
+	 * and alpha. Leaves r^2, avgx, avgy, stdx, stdy unchanged from SLR.
+	 * 
+	 * Recall that the robust regression line is given by y = alpha + beta(x)
+	 * 
+	 * Note, this algorithm ONLY works if the x-predictors are unique!
+	 * 
+	 * @param dataset
+	 *          Dataset of x, y.
+	 * @throws DataException
+	 *           If there are fewer than two points.
+	 */
+	public void RMR(double[][] dataset) {
+		store(fitRMR(dataset));
+	}
+
+	/**
+	 * Repeated median regression, without touching SampleStats. Safe to call
+	 * from several threads at once.
+	 * 
+	 * Note, this algorithm ONLY works if the x-predictors are unique!
+	 * 
+	 * @param dataset
+	 *          Dataset of x, y.
+	 * @return Result of the fit. Slope and intercept are those of the repeated
+	 *         median line, the other statistics those of SLR.
+	 * @throws DataException
+	 *           If there are fewer than two points.
+	 */
+	public RegressionResult fitRMR(double[][] dataset) {
+		return fitRMR(dataset, null);
+	}
+
+	/**
+	 * Repeated median regression, without touching SampleStats, reporting to a
+	 * monitor as the inner medians of the points are found.
+	 * 
+	 * Note, this algorithm ONLY works if the x-predictors are unique!
+	 * 
+	 * @param dataset
+	 *          Dataset of x, y.
+	 * @param monitor
+	 *          Monitor of the fit, or null.
+	 * @return Result of the fit, as fitRMR gives it.
+	 * @throws DataException
+	 *           If there are fewer than two points.
+	 * @throws FitCancelledException
+	 *           If the monitor stops the fit.
+	 */
+	public RegressionResult fitRMR(double[][] dataset, FitMonitor monitor) {
+
+		int sampleSize = dataset[0].length;
+		if (sampleSize < 2) {
+			throw new DataException(DataException.Reason.TOO_FEW_PAIRS,
+					"Fewer than two points!");
+		}
+		double[] slopeMedians = new double[sampleSize];
+		double[] interceptMedians = new double[sampleSize];
+
+		if (monitor != null) {
+			monitor.start(sampleSize);
+		}
+
+		if (parallelism <= 1 || sampleSize < parallelPoints) {
+			new RepeatedMedianTask(dataset[0], dataset[1], slopeMedians,
+					interceptMedians, 0, sampleSize, sampleSize, monitor).invoke();
+		} else {
+			// A few leaves per thread lets work stealing even out the load
+			int leavesPerThread = 4;
+			int leafSize = Math.max(1, sampleSize / (parallelism * leavesPerThread));
+
+			getPool().invoke(new RepeatedMedianTask(dataset[0], dataset[1],
+					slopeMedians, interceptMedians, 0, sampleSize, leafSize, monitor));
+		}
+
+		double beta = Selection.median(slopeMedians, 0, sampleSize);
+		double alpha = Selection.median(interceptMedians, 0, sampleSize);
+
+		// Generate appropriate sample statistics from SLR, then we overwrite
+		// these.
+		double[] stats = new double[statSize];
+		fitSLR(dataset, stats);
+
+		stats[0] = beta; // Slope of repeated median line
+		stats[1] = alpha; // Intercept of repeated median line
+
+		return new RegressionResult(stats);
+	}
+}
@@ -0,0 +1,120 @@
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Fork/join task that computes the inner medians of repeated median
+ * regression for a range of points. For each point i it finds the median slope
+ * and the median intercept of the lines through i and every other point.
+ *
+ * Each leaf task allocates one scratch buffer and reuses it for every point in
+ * its range, so memory use grows with the number of threads rather than with
+ * the number of points. Each point done is reported to the monitor of the
+ * fit, if it has one.
+ */
+public class RepeatedMedianTask extends RecursiveAction {
+
+	private static final long serialVersionUID = 1L;
+
+	private final double[] x, y;
+	private final double[] slopeMedians, interceptMedians;
+	private final int from, to;
+	private final int leafSize;
+	private final FitMonitor monitor;
+
+	/**
+	 * @param x
+	 *          Array of predictor values, all distinct.
+	 * @param y
+	 *          Array of response values.
+	 * @param slopeMedians
+	 *          Output array for the median slope through each point.
+	 * @param interceptMedians
+	 *          Output array for the median intercept through each point.
+	 * @param from
+	 *          First point of the range (inclusive).
+	 * @param to
+	 *          Last point of the range (exclusive).
+	 * @param leafSize
+	 *          Largest range computed without splitting further.
+	 */
+	public RepeatedMedianTask(double[] x, double[] y, double[] slopeMedians,
+			double[] interceptMedians, int from, int to, int leafSize) {
+		this(x, y, slopeMedians, interceptMedians, from, to, leafSize, null);
+	}
+
+	/**
+	 * @param x
+	 *          Array of predictor values, all distinct.
+	 * @param y
+	 *          Array of response values.
+	 * @param slopeMedians
+	 *          Output array for the median slope through each point.
+	 * @param interceptMedians
+	 *          Output array for the median intercept through each point.
+	 * @param from
+	 *          First point of the range (inclusive).
+	 * @param to
+	 *          Last point of the range (exclusive).
+	 * @param leafSize
+	 *          Largest range computed without splitting further.
+	 * @param monitor
+	 *          Monitor of the fit, or null.
+	 */
+	public RepeatedMedianTask(double[] x, double[] y, double[] slopeMedians,
+			double[] interceptMedians, int from, int to, int leafSize,
+			FitMonitor monitor) {
+		this.x = x;
+		this.y = y;
+		this.slopeMedians = slopeMedians;
+		this.interceptMedians = interceptMedians;
+		this.from = from;
+		this.to = to;
+		this.leafSize = leafSize;
+		this.monitor = monitor;
+	}
+
+	@Override
+	protected void compute() {
+		if (to - from <= leafSize) {
+			computeRange();
+			return;
+		}
+
+		int mid = (from + to) >>> 1;
+		invokeAll(new RepeatedMedianTask(x, y, slopeMedians, interceptMedians,
+				from, mid, leafSize, monitor), new RepeatedMedianTask(x, y,
+				slopeMedians, interceptMedians, mid, to, leafSize, monitor));
+	}
+
+	private void computeRange() {
+		int sampleSize = x.length;
+		double[] scratch = new double[sampleSize - 1];
+
+		for (int i = from; i < to; i++) {
+			double xi = x[i];
+			double yi = y[i];
+
+			// Slopes of the lines through point i and every other point
+			int k = 0;
+			for (int j = 0; j < sampleSize; j++) {
+				if (j != i) {
+					scratch[k++] = (y[j] - yi) / (x[j] - xi);
+				}
+			}
+			slopeMedians[i] = Selection.median(scratch, 0, k);
+
+			// Intercepts of the same lines
+			k = 0;
+			for (int j = 0; j < sampleSize; j++) {
+				if (j != i) {
+					scratch[k++] = ((x[j] * yi) - (xi * y[j])) / (x[j] - xi);
+				}
+			}
+			interceptMedians[i] = Selection.median(scratch, 0, k);
+
+			// Each point takes O(n) work, enough to report every one
+			if (monitor != null) {
+				monitor.advance(1);
+			}
+		}
+	}
+}
@@ -0,0 +1,59 @@
+/**
+ * Plain Java implementation of SumKernel, used when the vector kernel is not
+ * available.
+ */
+public class ScalarSumKernel implements SumKernel {
+
+	@Override
+	public void sums(double[] x, double[] y, double[] w, int from, int to,
+			double x0, double y0, double[] out) {
+
+		double dxsum = 0, dysum = 0, dxxsum = 0, dyysum = 0;
+		double wsum = 0, wdxsum = 0, wdysum = 0, wdxxsum = 0, wdxysum = 0;
+
+		if (w == null) {
+			// Unity weights, so the weighted sums equal the unweighted ones
+			for (int i = from; i < to; i++) {
+				double dx = x[i] - x0;
+				double dy = y[i] - y0;
+
+				dxsum += dx;
+				dysum += dy;
+				dxxsum += dx * dx;
+				dyysum += dy * dy;
+				wdxysum += dx * dy;
+			}
+
+			wsum = to - from;
+			wdxsum = dxsum;
+			wdysum = dysum;
+			wdxxsum = dxxsum;
+		} else {
+			for (int i = from; i < to; i++) {
+				double dx = x[i] - x0;
+				double dy = y[i] - y0;
+				double wdx = w[i] * dx;
+
+				dxsum += dx;
+				dysum += dy;
+				dxxsum += dx * dx;
+				dyysum += dy * dy;
+				wsum += w[i];
+				wdxsum += wdx;
+				wdysum += w[i] * dy;
+				wdxxsum += wdx * dx;
+				wdxysum += wdx * dy;
+			}
+		}
+
+		out[DX] = dxsum;
+		out[DY] = dysum;
+		out[DXX] = dxxsum;
+		out[DYY] = dyysum;
+		out[W] = wsum;
+		out[WDX] = wdxsum;
+		out[WDY] = wdysum;
+		out[WDXX] = wdxxsum;
+		out[WDXY] = wdxysum;
+	}
+}
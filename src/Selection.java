@@ -0,0 +1,127 @@
+import java.util.Arrays;
+
+/**
+ * Finds order statistics (the k-th smallest value, or the median) of an array
+ * in expected linear time, without sorting the whole array.
+ *
+ * Uses quickselect with a median-of-three pivot and a three-way partition, so
+ * runs of equal values are handled in one step. If partitioning stops making
+ * progress the remaining range is sorted instead, which bounds the worst case
+ * at O(n log n).
+ *
+ * See: https://en.wikipedia.org/wiki/Quickselect
+ */
+public class Selection {
+
+	// Ranges at most this long are sorted rather than partitioned
+	private static final int SORT_SIZE = 16;
+
+	/**
+	 * Finds the k-th smallest value of a range of an array. The range is
+	 * reordered so that the k-th smallest value is at index from + k, with no
+	 * larger value before it and no smaller value after it.
+	 *
+	 * @param array
+	 *          Array to select from. Reordered in place.
+	 * @param from
+	 *          First index of the range (inclusive).
+	 * @param to
+	 *          Last index of the range (exclusive).
+	 * @param k
+	 *          Rank to find, counted from zero within the range.
+	 * @return k-th smallest value of the range.
+	 */
+	public static double select(double[] array, int from, int to, int k) {
+		if (k < 0 || k >= to - from) {
+			throw new IllegalArgumentException("Rank " + k + " outside range of "
+					+ (to - from) + " values");
+		}
+
+		int target = from + k;
+		int left = from;
+		int right = to - 1;
+
+		// Each partition should at least halve the range on average; allow
+		// twice the expected number of rounds before giving up and sorting.
+		int rounds = 2 * (32 - Integer.numberOfLeadingZeros(to - from));
+
+		while (right - left >= SORT_SIZE) {
+			if (rounds-- == 0) {
+				break;
+			}
+
+			double pivot = medianOfThree(array[left], array[(left + right) >>> 1],
+					array[right]);
+
+			// Three-way partition: [left, lt) < pivot, [lt, gt] == pivot,
+			// (gt, right] > pivot
+			int lt = left;
+			int gt = right;
+			int i = left;
+			while (i <= gt) {
+				double value = array[i];
+				if (value < pivot) {
+					array[i++] = array[lt];
+					array[lt++] = value;
+				} else if (value > pivot) {
+					array[i] = array[gt];
+					array[gt--] = value;
+				} else {
+					i++;
+				}
+			}
+
+			if (target < lt) {
+				right = lt - 1;
+			} else if (target > gt) {
+				left = gt + 1;
+			} else {
+				return array[target];
+			}
+		}
+
+		Arrays.sort(array, left, right + 1);
+		return array[target];
+	}
+
+	/**
+	 * Finds the median of a range of an array. For an even number of values
+	 * this is the mean of the two middle values.
+	 *
+	 * @param array
+	 *          Array to find the median of. Reordered in place.
+	 * @param from
+	 *          First index of the range (inclusive).
+	 * @param to
+	 *          Last index of the range (exclusive).
+	 * @return Median of the range.
+	 */
+	public static double median(double[] array, int from, int to) {
+		int size = to - from;
+		int half = 2;
+
+		double upper = select(array, from, to, size / half);
+		if (size % half == 1) {
+			return upper;
+		}
+
+		// After selecting, the lower middle value is the largest value left of
+		// the upper middle value.
+		double lower = array[from];
+		for (int i = from + 1; i < from + (size / half); i++) {
+			if (array[i] > lower) {
+				lower = array[i];
+			}
+		}
+
+		return (lower + upper) / half;
+	}
+
+	private static double medianOfThree(double a, double b, double c) {
+		if (a < b) {
+			return (b < c) ? b : ((a < c) ? c : a);
+		}
+
+		return (a < c) ? a : ((b < c) ? c : b);
+	}
+}
@@ -0,0 +1,432 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Selects the k-th smallest of the n(n-1)/2 pairwise slopes of a set of
+ * points, without ever storing all of the slopes. Used by LinearRegression.RLR
+ * to find the Theil-Sen slope (the median pairwise slope) exactly, in O(n)
+ * memory and O(n log n) expected time.
+ *
+ * The algorithm is the randomized slope selection of Matousek and of
+ * Dillencourt, Mount and Netanyahu. It relies on one fact: with the points
+ * sorted by x, the slope between points i and j is at most t exactly when the
+ * values y - t(x) of the two points are out of order. So the number of slopes
+ * at most t is the number of inversions of that sequence, which a merge sort
+ * counts in O(n log n) time.
+ *
+ * The search keeps an interval (lo, hi) known to contain the wanted slopes. In
+ * each round it draws a random sample of the slopes inside the interval,
+ * narrows the interval to the sample slopes around the wanted rank, and
+ * counts how many slopes lie below the new bounds. Once the interval holds
+ * O(n) slopes they are listed and the answer is found with Selection.
+ *
+ * Resources for learning more:
+ * https://en.wikipedia.org/wiki/Theil%E2%80%93Sen_estimator
+ * J. Matousek, Randomized optimal algorithm for slope selection (1991).
+ * M. Dillencourt, D. Mount, N. Netanyahu, A randomized algorithm for slope
+ * selection (1992).
+ *
+ * Given a FitMonitor, the selection counts the slopes it has ruled out as
+ * the work done, out of all n(n-1)/2, and checks the monitor on every pass of
+ * the merge sort.
+ *
+ * Note, this algorithm ONLY works if the x-predictors are unique! Ties in y -
+ * t(x) are resolved in floating point, so a slope lying within rounding error
+ * of an interval bound may be counted on either side of it.
+ */
+public class SlopeSelection {
+
+	// Modes of the merge sort
+	private static final int SORT = 0; // stable sort, no counting
+	private static final int COUNT = 1; // count inversions only
+	private static final int SAMPLE = 2; // list the inversions at given ranks
+	private static final int LIST = 3; // list every inversion
+
+	// Interval is listed once it holds at most this many slopes per point
+	private static final int LIST_FACTOR = 8;
+
+	// Number of standard deviations of sampling error allowed around the
+	// expected rank when narrowing the interval.
+	private static final double MARGIN = 3;
+
+	// Rounds allowed before giving up on narrowing further
+	private static final int MAX_ROUNDS = 64;
+
+	private final double[] x, y;
+	private final int sampleSize;
+	private final Random random;
+	private final FitMonitor monitor;
+
+	// Slopes ruled out so far, as reported to the monitor
+	private long ruledOut = 0;
+
+	// Point indices in ascending order of x
+	private final int[] xorder;
+
+	// Scratch space for the merge sort
+	private int[] order, orderScratch;
+	private double[] keys, keyScratch;
+
+	// Inversion listing state, used by the SAMPLE and LIST modes
+	private long[] ranks;
+	private double[] listed;
+	private int nextRank;
+	private long found;
+
+	/**
+	 * @param x
+	 *          Array of predictor values, all distinct.
+	 * @param y
+	 *          Array of response values.
+	 * @param seed
+	 *          Seed for the random sampling. The selected slope does not depend
+	 *          on it, only the running time does.
+	 */
+	public SlopeSelection(double[] x, double[] y, long seed) {
+		this(x, y, seed, null);
+	}
+
+	/**
+	 * @param x
+	 *          Array of predictor values, all distinct.
+	 * @param y
+	 *          Array of response values.
+	 * @param seed
+	 *          Seed for the random sampling.
+	 * @param monitor
+	 *          Monitor of the fit, or null. Its work is started afresh at
+	 *          n(n-1)/2 slopes.
+	 */
+	public SlopeSelection(double[] x, double[] y, long seed, FitMonitor monitor) {
+		this.x = x;
+		this.y = y;
+		this.sampleSize = x.length;
+		this.random = new Random(seed);
+		this.monitor = monitor;
+
+		if (monitor != null) {
+			monitor.start(pairCount());
+		}
+
+		order = new int[sampleSize];
+		orderScratch = new int[sampleSize];
+		keys = new double[sampleSize];
+		keyScratch = new double[sampleSize];
+
+		// Sort the point indices by x once; every count starts from this order.
+		xorder = PairedSort.order(x, null);
+	}
+
+	/**
+	 * @return Number of pairwise slopes, n(n-1)/2.
+	 */
+	public long pairCount() {
+		return ((long) sampleSize * (sampleSize - 1)) / 2;
+	}
+
+	/**
+	 * @return Median of all pairwise slopes. For an even number of slopes this
+	 *         is the mean of the two middle slopes.
+	 */
+	public double medianSlope() {
+		long n = pairCount();
+		if (n == 0) {
+			return Double.NaN;
+		}
+
+		int half = 2;
+		long upper = n / half;
+		long lower = (n % half == 1) ? upper : upper - 1;
+
+		double[] slopes = select(lower, upper);
+		return (slopes[0] + slopes[1]) / half;
+	}
+
+	/**
+	 * Finds the slopes of rank lower and upper, where upper is lower or
+	 * lower + 1.
+	 *
+	 * @return Pair of the lower and upper ranked slopes.
+	 */
+	public double[] select(long lower, long upper) {
+		double lo = Double.NEGATIVE_INFINITY;
+		double hi = Double.POSITIVE_INFINITY;
+		long belowLo = 0; // slopes at most lo
+		long belowHi = pairCount(); // slopes less than hi
+
+		long listLimit = Math.min((long) LIST_FACTOR * sampleSize + 64,
+				Integer.MAX_VALUE - 8);
+
+		for (int round = 0; round < MAX_ROUNDS; round++) {
+			long inside = belowHi - belowLo;
+			ruleOut(pairCount() - inside);
+
+			// Both wanted ranks lie past the slopes inside (lo, hi), in the block
+			// of slopes tied at hi. Quantized y-values give many such ties.
+			if (lower - belowLo >= inside) {
+				ruleOut(pairCount());
+				return new double[] { hi, hi };
+			}
+			if (inside <= listLimit) {
+				break;
+			}
+
+			// Draw sorted random ranks among the slopes strictly inside (lo, hi)
+			int m = sampleSize;
+			long[] sample = new long[m];
+			for (int i = 0; i < m; i++) {
+				sample[i] = (long) (random.nextDouble() * inside);
+			}
+			Arrays.sort(sample);
+
+			double[] slopes = listInside(lo, hi, sample, m);
+			Arrays.sort(slopes);
+			m = slopes.length;
+			if (m == 0) {
+				continue;
+			}
+
+			// Expected positions of the wanted ranks within the sample, widened
+			// by a few standard deviations of the sampling error.
+			double margin = MARGIN * Math.sqrt(m);
+			int lowIndex = (int) Math.floor(((double) (lower - belowLo) / inside) * m
+					- margin);
+			int highIndex = (int) Math.ceil(((double) (upper - belowLo) / inside) * m
+					+ margin);
+
+			// Wanted ranks near either end of the interval would put an index
+			// outside the sample; the sample's end slope still narrows it.
+			lowIndex = Math.max(0, Math.min(m - 1, lowIndex));
+			highIndex = Math.max(0, Math.min(m - 1, highIndex));
+
+			double lowCandidate = slopes[lowIndex];
+			long lowCount = countAtMost(lowCandidate, false);
+			if (lowCount <= lower) {
+				lo = lowCandidate;
+				belowLo = lowCount;
+			} else if (lowCount > upper) {
+				hi = lowCandidate;
+				belowHi = countAtMost(lowCandidate, true);
+			}
+
+			double highCandidate = slopes[highIndex];
+			if (highCandidate > lo && highCandidate < hi) {
+				long highCount = countAtMost(highCandidate, false);
+				if (highCount > upper) {
+					hi = highCandidate;
+					belowHi = countAtMost(highCandidate, true);
+				} else if (highCount <= lower) {
+					lo = highCandidate;
+					belowLo = highCount;
+				}
+			}
+		}
+
+		// Listing more than this would break the O(n) memory bound
+		long inside = belowHi - belowLo;
+		if (inside > listLimit) {
+			throw new IllegalStateException("Slope selection did not converge");
+		}
+
+		// List every slope strictly inside (lo, hi). Wanted ranks past the end
+		// of the list are slopes equal to hi.
+		double[] slopes = listInside(lo, hi, null, (int) inside);
+		long upperRank = upper - belowLo;
+		long lowerRank = lower - belowLo;
+
+		double[] result = new double[2];
+		result[1] = selectListed(slopes, upperRank, hi);
+		if (lowerRank == upperRank) {
+			result[0] = result[1];
+		} else if (upperRank >= slopes.length) {
+			result[0] = selectListed(slopes, lowerRank, hi);
+		} else {
+			// The lower slope is the largest one left of the upper slope
+			result[0] = slopes[0];
+			for (int i = 1; i < upperRank; i++) {
+				result[0] = Math.max(result[0], slopes[i]);
+			}
+		}
+		ruleOut(pairCount());
+
+		return result;
+	}
+
+	/**
+	 * Reports the slopes ruled out since the last report to the monitor.
+	 *
+	 * @param total
+	 *          Number of slopes ruled out so far.
+	 */
+	private void ruleOut(long total) {
+		if (monitor != null && total > ruledOut) {
+			monitor.advance(total - ruledOut);
+			ruledOut = total;
+		}
+	}
+
+	private double selectListed(double[] slopes, long rank, double hi) {
+		if (rank >= slopes.length) {
+			return hi;
+		}
+
+		return Selection.select(slopes, 0, slopes.length, (int) Math.max(0, rank));
+	}
+
+	/**
+	 * Counts the slopes at most t, or strictly less than t.
+	 */
+	private long countAtMost(double t, boolean strict) {
+		for (int i = 0; i < sampleSize; i++) {
+			int point = xorder[i];
+			order[i] = point;
+			keys[i] = y[point] - (t * x[point]);
+		}
+
+		return mergeSort(COUNT, strict);
+	}
+
+	/**
+	 * Lists slopes strictly inside (lo, hi). If sample is null every slope is
+	 * listed, otherwise only those at the given sorted ranks.
+	 */
+	private double[] listInside(double lo, double hi, long[] sample, int size) {
+		// Order the points so that a pair appears in order exactly when its
+		// slope is greater than lo. Ties in y - lo(x) have a slope of exactly lo,
+		// so those are put in descending x order to keep them out.
+		if (lo == Double.NEGATIVE_INFINITY) {
+			System.arraycopy(xorder, 0, order, 0, sampleSize);
+		} else {
+			for (int i = 0; i < sampleSize; i++) {
+				int point = xorder[sampleSize - 1 - i];
+				order[i] = point;
+				keys[i] = y[point] - (lo * x[point]);
+			}
+			mergeSort(SORT, false);
+		}
+
+		// Of those pairs, the inverted ones under y - hi(x) have slope below hi
+		for (int i = 0; i < sampleSize; i++) {
+			int point = order[i];
+			keys[i] = (hi == Double.POSITIVE_INFINITY) ? -x[point]
+					: y[point] - (hi * x[point]);
+		}
+
+		ranks = sample;
+		listed = new double[size];
+		nextRank = 0;
+		found = 0;
+		mergeSort((sample == null) ? LIST : SAMPLE, true);
+
+		// Rounding can make the interval hold slightly fewer slopes than its
+		// counts said, so trim off any slots that were never filled.
+		int filled = (sample == null) ? (int) Math.min(found, size) : nextRank;
+		double[] result = (filled == size) ? listed : Arrays.copyOf(listed, filled);
+		ranks = null;
+		listed = null;
+		return result;
+	}
+
+	/**
+	 * Bottom-up merge sort of order by keys, counting (and optionally listing)
+	 * pairs whose keys are out of order. If strict is false, pairs with equal
+	 * keys are counted as out of order too.
+	 */
+	private long mergeSort(int mode, boolean strict) {
+		long inversions = 0;
+
+		for (int width = 1; width < sampleSize; width *= 2) {
+			if (monitor != null) {
+				monitor.check();
+			}
+
+			for (int left = 0; left < sampleSize; left += 2 * width) {
+				int mid = Math.min(left + width, sampleSize);
+				int right = Math.min(left + (2 * width), sampleSize);
+				inversions += merge(left, mid, right, mode, strict);
+			}
+
+			int[] swapOrder = order;
+			order = orderScratch;
+			orderScratch = swapOrder;
+
+			double[] swapKeys = keys;
+			keys = keyScratch;
+			keyScratch = swapKeys;
+		}
+
+		return inversions;
+	}
+
+	/**
+	 * Merges the sorted runs [left, mid) and [mid, right) of order/keys into
+	 * orderScratch/keyScratch.
+	 */
+	private long merge(int left, int mid, int right, int mode, boolean strict) {
+		long inversions = 0;
+		int i = left;
+		int j = mid;
+		int k = left;
+
+		while (i < mid && j < right) {
+			boolean takeRight;
+			if (mode == SORT) {
+				takeRight = keys[j] < keys[i]; // stable
+			} else if (strict) {
+				takeRight = keys[j] < keys[i];
+			} else {
+				takeRight = keys[j] <= keys[i];
+			}
+
+			if (takeRight) {
+				// Every point left in the left run is out of order with this one
+				int remaining = mid - i;
+				if (mode == SAMPLE || mode == LIST) {
+					report(i, mid, j);
+				}
+				inversions += remaining;
+				orderScratch[k] = order[j];
+				keyScratch[k++] = keys[j++];
+			} else {
+				orderScratch[k] = order[i];
+				keyScratch[k++] = keys[i++];
+			}
+		}
+
+		while (i < mid) {
+			orderScratch[k] = order[i];
+			keyScratch[k++] = keys[i++];
+		}
+		while (j < right) {
+			orderScratch[k] = order[j];
+			keyScratch[k++] = keys[j++];
+		}
+
+		return inversions;
+	}
+
+	/**
+	 * Records the slopes between point order[j] and points order[from..to),
+	 * either all of them or those that fall on a sampled rank.
+	 */
+	private void report(int from, int to, int j) {
+		int b = order[j];
+
+		if (ranks == null) {
+			for (int i = from; i < to; i++, found++) {
+				if (found < listed.length) {
+					int a = order[i];
+					listed[(int) found] = (y[b] - y[a]) / (x[b] - x[a]);
+				}
+			}
+			return;
+		}
+
+		long end = found + (to - from);
+		while (nextRank < ranks.length && ranks[nextRank] < end) {
+			int a = order[from + (int) (ranks[nextRank] - found)];
+			listed[nextRank++] = (y[b] - y[a]) / (x[b] - x[a]);
+		}
+		found = end;
+	}
+}
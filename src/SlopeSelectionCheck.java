@@ -0,0 +1,124 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks SlopeSelection against brute force: every pairwise slope is listed
+ * and sorted, and the slopes of a spread of ranks compared with those that
+ * slope selection finds. The datasets include quantized and tied y-values,
+ * where many slopes are equal and the wanted ranks can fall in a block of
+ * slopes tied at the bound of the search interval.
+ *
+ * Finally a large dataset of quantized y-values, far too large to list, is
+ * selected from to show that it stays within O(n) memory:
+ *
+ * java -Xmx256m SlopeSelectionCheck [points]
+ */
+public class SlopeSelectionCheck {
+
+	/**
+	 * @param args
+	 *          Optional number of points of the large dataset.
+	 */
+	public static void main(String[] args) {
+		int largeSize = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+
+		Random random = new Random(42);
+		int failures = 0;
+
+		for (int sampleSize : new int[] { 2, 3, 5, 50, 400, 2000 }) {
+			double[] x = new double[sampleSize];
+			double[] continuous = new double[sampleSize];
+			double[] quantized = new double[sampleSize];
+			double[] alternating = new double[sampleSize];
+			double[] constant = new double[sampleSize];
+
+			for (int i = 0; i < sampleSize; i++) {
+				x[i] = i + (0.5 * random.nextDouble());
+				continuous[i] = (3 * x[i]) + random.nextGaussian();
+				quantized[i] = random.nextInt(3);
+				alternating[i] = i % 2;
+				constant[i] = 1;
+			}
+
+			failures += check("continuous", x, continuous);
+			failures += check("quantized", x, quantized);
+			failures += check("alternating", x, alternating);
+			failures += check("constant", x, constant);
+
+			// Integer x-values give exactly tied slopes as well
+			double[] grid = new double[sampleSize];
+			for (int i = 0; i < sampleSize; i++) {
+				grid[i] = i;
+			}
+			failures += check("quantized on grid", grid, quantized);
+			failures += check("alternating on grid", grid, alternating);
+		}
+
+		double[] x = new double[largeSize];
+		double[] y = new double[largeSize];
+		for (int i = 0; i < largeSize; i++) {
+			x[i] = i;
+			y[i] = random.nextInt(3);
+		}
+		long start = System.nanoTime();
+		double median = new SlopeSelection(x, y, 1).medianSlope();
+		System.out.printf("%d quantized points: median slope %s in %.1f ms%n",
+				largeSize, median, (System.nanoTime() - start) / 1e6);
+
+		if (failures > 0) {
+			System.out.println(failures + " mismatches");
+			System.exit(1);
+		}
+		System.out.println("All slopes match");
+	}
+
+	/**
+	 * @return Number of ranks whose slope differs from brute force.
+	 */
+	private static int check(String name, double[] x, double[] y) {
+		int sampleSize = x.length;
+		double[] slopes = new double[sampleSize * (sampleSize - 1) / 2];
+		int k = 0;
+		for (int i = 0; i < sampleSize; i++) {
+			for (int j = i + 1; j < sampleSize; j++) {
+				slopes[k++] = (y[j] - y[i]) / (x[j] - x[i]);
+			}
+		}
+		Arrays.sort(slopes);
+
+		SlopeSelection selection = new SlopeSelection(x, y, 7);
+		int failures = 0;
+
+		// The ends, the middle and a spread of ranks in between
+		int steps = 16;
+		for (int step = 0; step <= steps; step++) {
+			long rank = ((long) (slopes.length - 1) * step) / steps;
+			double found = selection.select(rank, rank)[1];
+			if (!same(found, slopes[(int) rank])) {
+				System.out.println(name + ", n = " + sampleSize + ": rank " + rank
+						+ " gave " + found + ", expected " + slopes[(int) rank]);
+				failures++;
+			}
+		}
+
+		int half = slopes.length / 2;
+		double expected = (slopes.length % 2 == 1) ? slopes[half]
+				: (slopes[half - 1] + slopes[half]) / 2;
+		double median = selection.medianSlope();
+		if (!same(median, expected)) {
+			System.out.println(name + ", n = " + sampleSize + ": median " + median
+					+ ", expected " + expected);
+			failures++;
+		}
+
+		return failures;
+	}
+
+	/**
+	 * @return true if two slopes agree to within rounding.
+	 */
+	private static boolean same(double a, double b) {
+		double tolerance = 1e-12;
+		return a == b || Math.abs(a - b) <= tolerance * Math.max(1, Math.abs(b));
+	}
+}
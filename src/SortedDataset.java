@@ -0,0 +1,139 @@
+/**
+ * Dataset sorted by x once, together with everything the regressions and
+ * plots would otherwise work out again on each call: the permutation that
+ * sorted it, the smallest and largest x-values, whether the x-values are
+ * distinct, and the summary moments (means, standard deviations and the SLR
+ * line). LinearRegression.sort builds one; the fit and plot methods that take
+ * it neither sort nor change it.
+ *
+ * Sample usage for fitting and plotting the same data several ways:
+ *
+ * sorted = regression.sort(dataset, weights);
+ * regression.SLR(sorted); points = regression.plotLine(sorted);
+ * regression.RLR(sorted);
+ *
+ * Instances are immutable, and can be shared freely between threads. The
+ * arrays returned by the getters are shared, not copied, and must not be
+ * changed.
+ */
+public final class SortedDataset {
+
+	private final double[] x, y, weights;
+	private final int[] order;
+	private final boolean distinct;
+	private final RegressionResult moments;
+
+	// Built on first use; every thread builds the same one
+	private volatile CompactDataset compact;
+
+	/**
+	 * @param x
+	 *          Predictor values, sorted in ascending order.
+	 * @param y
+	 *          Response values, in the same order.
+	 * @param weights
+	 *          Weights in the same order, or null.
+	 * @param order
+	 *          Original index of each point.
+	 * @param moments
+	 *          Result of SLR on the points.
+	 */
+	SortedDataset(double[] x, double[] y, double[] weights, int[] order,
+			RegressionResult moments) {
+		this.x = x;
+		this.y = y;
+		this.weights = weights;
+		this.order = order;
+		this.moments = moments;
+
+		boolean distinct = true;
+		for (int i = 1; i < x.length && distinct; i++) {
+			distinct = x[i - 1] != x[i];
+		}
+		this.distinct = distinct;
+	}
+
+	/**
+	 * @return Number of points.
+	 */
+	public int size() {
+		return x.length;
+	}
+
+	/**
+	 * @return Dataset of x, y in ascending order of x, in the form the
+	 *         regressions take.
+	 */
+	public double[][] toDataset() {
+		return new double[][] { x, y };
+	}
+
+	/**
+	 * @return true if the dataset has a weight for every point.
+	 */
+	public boolean hasWeights() {
+		return weights != null;
+	}
+
+	/**
+	 * @return Weights in ascending order of x, or null if there are none.
+	 */
+	public double[] getWeights() {
+		return weights;
+	}
+
+	/**
+	 * @return Permutation that sorted the dataset: point i of this dataset is
+	 *         point order[i] of the original one.
+	 */
+	public int[] getOrder() {
+		return order;
+	}
+
+	/**
+	 * @return Smallest x-value.
+	 */
+	public double getMinX() {
+		return x[0];
+	}
+
+	/**
+	 * @return Largest x-value.
+	 */
+	public double getMaxX() {
+		return x[x.length - 1];
+	}
+
+	/**
+	 * @return true if no two points share an x-value.
+	 */
+	public boolean hasDistinctX() {
+		return distinct;
+	}
+
+	/**
+	 * @return Result of SLR on the dataset, holding its means and standard
+	 *         deviations.
+	 */
+	public RegressionResult getMoments() {
+		return moments;
+	}
+
+	/**
+	 * Collapses the points that share an x-value, as CompactDataset.compact
+	 * does, without sorting again. The result is kept for later calls.
+	 *
+	 * @return Compact dataset of the points.
+	 * @throws DataException
+	 *           If there are fewer than two distinct x-values.
+	 */
+	public CompactDataset compact() {
+		CompactDataset result = compact;
+		if (result == null) {
+			result = CompactDataset.compactSorted(x, y, weights);
+			compact = result;
+		}
+
+		return result;
+	}
+}
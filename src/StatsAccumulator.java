@@ -0,0 +1,239 @@
+import java.lang.Math;
+
+/**
+ * Accumulates the sample statistics used by LinearRegression in a single pass
+ * over the data. Points can be added one at a time or in blocks, and two
+ * partial accumulators (for example from different chunks of a dataset) can be
+ * merged into one.
+ *
+ * Means and sums of squares are updated using Welford's method, and merged
+ * using the pairwise update of Chan et al. This avoids the cancellation that
+ * happens when large raw sums of x^2 and xy are subtracted from each other.
+ *
+ * Resources for learning more:
+ * https://en.wikipedia.org/wiki/Algorithms_for_calculating_variance
+ */
+public class StatsAccumulator {
+
+	// Number of points summed by the kernel before being merged in
+	private static final int CHUNK_SIZE = 1024;
+
+	// Scratch space for the kernel sums of one chunk
+	private final double[] sums = new double[SumKernel.SIZE];
+
+	// Unweighted statistics, used for avgx, avgy, stdx, stdy
+	private long count = 0;
+	private double meanx = 0, meany = 0;
+	private double xresidsqrsum = 0, yresidsqrsum = 0;
+
+	// Weighted statistics, used for the slope and intercept
+	private double wsum = 0;
+	private double wmeanx = 0, wmeany = 0;
+	private double wxxsum = 0; // weighted sum of (x - wmeanx)^2
+	private double wxysum = 0; // weighted sum of (x - wmeanx)(y - wmeany)
+
+	/**
+	 * Adds a single point to the accumulator.
+	 *
+	 * @param x
+	 *          Predictor value.
+	 * @param y
+	 *          Response value.
+	 * @param w
+	 *          Weight of the point.
+	 */
+	public void add(double x, double y, double w) {
+		count++;
+
+		double dx = x - meanx;
+		double dy = y - meany;
+		meanx += dx / count;
+		meany += dy / count;
+		xresidsqrsum += dx * (x - meanx);
+		yresidsqrsum += dy * (y - meany);
+
+		// Points with zero weight do not contribute to the weighted line
+		if (w == 0) {
+			return;
+		}
+
+		wsum += w;
+
+		double wdx = x - wmeanx;
+		double wdy = y - wmeany;
+		double ratio = w / wsum;
+		wmeanx += wdx * ratio;
+		wmeany += wdy * ratio;
+		wxxsum += w * wdx * (x - wmeanx);
+		wxysum += w * wdx * (y - wmeany);
+	}
+
+	/**
+	 * Adds a block of points to the accumulator. The points are summed in
+	 * chunks by the fastest SumKernel available, and each chunk is merged in as
+	 * a partial accumulator.
+	 *
+	 * @param x
+	 *          Array of predictor values.
+	 * @param y
+	 *          Array of response values.
+	 * @param w
+	 *          Array of weights, or null to weight every point with unity.
+	 * @param from
+	 *          First index of the block (inclusive).
+	 * @param to
+	 *          Last index of the block (exclusive).
+	 */
+	public void add(double[] x, double[] y, double[] w, int from, int to) {
+		add(SumKernel.Selector.get(), x, y, w, from, to);
+	}
+
+	/**
+	 * Adds a block of points as above, summed by the given kernel rather than
+	 * the fastest available, so that the kernels can be compared.
+	 */
+	void add(SumKernel kernel, double[] x, double[] y, double[] w, int from,
+			int to) {
+		for (int start = from; start < to; start += CHUNK_SIZE) {
+			int end = Math.min(to, start + CHUNK_SIZE);
+
+			// Sum about the first point of the chunk to keep the sums small
+			double x0 = x[start];
+			double y0 = y[start];
+			kernel.sums(x, y, w, start, end, x0, y0, sums);
+
+			long n = end - start;
+			double dxbar = sums[SumKernel.DX] / n;
+			double dybar = sums[SumKernel.DY] / n;
+
+			// Residual sums of squares about the chunk means. Rounding can make
+			// these slightly negative when all values are equal.
+			double xss = Math.max(0, sums[SumKernel.DXX] - (sums[SumKernel.DX] * dxbar));
+			double yss = Math.max(0, sums[SumKernel.DYY] - (sums[SumKernel.DY] * dybar));
+
+			double chunkwsum = sums[SumKernel.W];
+			double wdxbar = 0, wdybar = 0, wxx = 0, wxy = 0;
+			if (chunkwsum != 0) {
+				wdxbar = sums[SumKernel.WDX] / chunkwsum;
+				wdybar = sums[SumKernel.WDY] / chunkwsum;
+				wxx = sums[SumKernel.WDXX] - (sums[SumKernel.WDX] * wdxbar);
+				wxy = sums[SumKernel.WDXY] - (sums[SumKernel.WDX] * wdybar);
+			}
+
+			merge(n, x0 + dxbar, y0 + dybar, xss, yss, chunkwsum, x0 + wdxbar,
+					y0 + wdybar, wxx, wxy);
+		}
+	}
+
+	/**
+	 * Merges the points of another accumulator into this one. The other
+	 * accumulator is left unchanged.
+	 *
+	 * @param other
+	 *          Accumulator holding a disjoint set of points.
+	 */
+	public void merge(StatsAccumulator other) {
+		merge(other.count, other.meanx, other.meany, other.xresidsqrsum,
+				other.yresidsqrsum, other.wsum, other.wmeanx, other.wmeany,
+				other.wxxsum, other.wxysum);
+	}
+
+	/**
+	 * Merges a partial set of statistics into this accumulator.
+	 */
+	private void merge(long ocount, double omeanx, double omeany,
+			double oxresidsqrsum, double oyresidsqrsum, double owsum,
+			double owmeanx, double owmeany, double owxxsum, double owxysum) {
+
+		if (ocount == 0) {
+			return;
+		}
+
+		if (count == 0) {
+			count = ocount;
+			meanx = omeanx;
+			meany = omeany;
+			xresidsqrsum = oxresidsqrsum;
+			yresidsqrsum = oyresidsqrsum;
+		} else {
+			double total = count + ocount;
+			double dx = omeanx - meanx;
+			double dy = omeany - meany;
+			double factor = ((double) count * ocount) / total;
+
+			meanx += dx * (ocount / total);
+			meany += dy * (ocount / total);
+			xresidsqrsum += oxresidsqrsum + (dx * dx * factor);
+			yresidsqrsum += oyresidsqrsum + (dy * dy * factor);
+			count += ocount;
+		}
+
+		if (owsum == 0) {
+			return;
+		}
+
+		if (wsum == 0) {
+			wsum = owsum;
+			wmeanx = owmeanx;
+			wmeany = owmeany;
+			wxxsum = owxxsum;
+			wxysum = owxysum;
+		} else {
+			double total = wsum + owsum;
+			double dx = owmeanx - wmeanx;
+			double dy = owmeany - wmeany;
+			double factor = (wsum * owsum) / total;
+
+			wmeanx += dx * (owsum / total);
+			wmeany += dy * (owsum / total);
+			wxxsum += owxxsum + (dx * dx * factor);
+			wxysum += owxysum + (dx * dy * factor);
+			wsum = total;
+		}
+	}
+
+	/**
+	 * @return Number of points added so far.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Writes out the accumulated statistics, in the same ordering as the
+	 * SampleStats array of LinearRegression: beta, alpha, r^2, avgx, avgy, stdx,
+	 * stdy.
+	 *
+	 * The slope and intercept are those of the weighted least squares line. The
+	 * means and standard deviations are unweighted, and r is taken as
+	 * beta(stdx/stdy).
+	 *
+	 * @param stats
+	 *          Array of at least seven elements to write into.
+	 */
+	public void writeStats(double[] stats) {
+		double beta = wxysum / wxxsum; // slope of least squares line
+		double alpha = wmeany - (beta * wmeanx); // intercept of least squares line
+
+		double stdx = Math.sqrt(xresidsqrsum / (count - 1));
+		double stdy = Math.sqrt(yresidsqrsum / (count - 1));
+		double r = beta * (stdx / stdy);
+
+		// numeric representations of stats element
+		int betan = 0;
+		int alphan = 1;
+		int rSquaren = 2;
+		int avgxn = 3;
+		int avgyn = 4;
+		int stdxn = 5;
+		int stdyn = 6;
+
+		stats[betan] = beta;
+		stats[alphan] = alpha;
+		stats[rSquaren] = r * r;
+		stats[avgxn] = meanx;
+		stats[avgyn] = meany;
+		stats[stdxn] = stdx;
+		stats[stdyn] = stdy;
+	}
+}
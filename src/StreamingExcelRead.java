@@ -0,0 +1,238 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Description: Reads the same columns as ExcelRead (x, y and weights from the
+ * first three columns of the first sheet, titles from the first row), but
+ * streams the sheet XML through a SAX parser instead of building an
+ * XSSFWorkbook. Numeric cells go straight into the primitive columns of a
+ * ColumnDataset, so heap use does not grow with anything but the values
+ * themselves.
+ *
+ * Problems with the file are reported by throwing a DataException.
+ *
+ * See: https://poi.apache.org/spreadsheet/how-to.html#xssf_sax_api
+ */
+public class StreamingExcelRead implements DataReader {
+
+	// Columns read from the sheet: x, y, weights
+	private static final int COLUMNS = 3;
+
+	/**
+	 * Reads an Excel file.
+	 *
+	 * @param fileName
+	 *          name of excel file
+	 * @return Columns and titles read from the first sheet
+	 * @throws IOException
+	 *           If the file cannot be read
+	 * @throws DataException
+	 *           If the file is not an Excel file, or does not hold at least two
+	 *           complete x-y pairs
+	 */
+	public ColumnDataset run(String fileName) throws IOException {
+		ColumnDataset data = new ColumnDataset();
+
+		OPCPackage pkg;
+		try {
+			pkg = OPCPackage.open(new File(fileName), PackageAccess.READ);
+		} catch (Exception e) {
+			throw new DataException(DataException.Reason.NOT_EXCEL,
+					"Not Excel File.", e);
+		}
+
+		try {
+			XSSFReader reader = new XSSFReader(pkg);
+			ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+
+			// Only the first sheet is read
+			Iterator<InputStream> sheets = reader.getSheetsData();
+			if (!sheets.hasNext()) {
+				throw new DataException(DataException.Reason.NOT_EXCEL,
+						"Not Excel File.");
+			}
+
+			InputStream sheet = sheets.next();
+			try {
+				XMLReader parser = newParser();
+				parser.setContentHandler(new SheetHandler(strings, data));
+				parser.parse(new InputSource(sheet));
+			} finally {
+				sheet.close();
+			}
+		} catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+			throw new DataException(DataException.Reason.NOT_EXCEL,
+					"Not Excel File.", e);
+		} finally {
+			pkg.revert();
+		}
+
+		data.validate();
+		return data;
+	}
+
+	private static XMLReader newParser() throws ParserConfigurationException,
+			SAXException {
+		SAXParserFactory factory = SAXParserFactory.newInstance();
+		factory.setNamespaceAware(true);
+
+		// Sheets never need a DTD, and refusing one rules out entity expansion
+		factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl",
+				true);
+
+		return factory.newSAXParser().getXMLReader();
+	}
+
+	/**
+	 * Handles the elements of the sheet XML. Each cell looks like
+	 * <c r="B12" t="s"><v>3</v></c>, where r is the cell reference, t is the
+	 * type (absent or "n" for numbers, "s" for shared strings) and v the value.
+	 */
+	private static class SheetHandler extends DefaultHandler {
+
+		private final ReadOnlySharedStringsTable strings;
+		private final ColumnDataset data;
+
+		private final StringBuilder text = new StringBuilder();
+		private boolean inText = false;
+
+		private int row = -1;
+		private int column = -1;
+		private String type;
+
+		SheetHandler(ReadOnlySharedStringsTable strings,
+				ColumnDataset data) {
+			this.strings = strings;
+			this.data = data;
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName,
+				Attributes attributes) {
+
+			if ("row".equals(localName)) {
+				String ref = attributes.getValue("r");
+				row = (ref != null) ? rowIndex(ref) : row + 1;
+				column = -1;
+			} else if ("c".equals(localName)) {
+				String ref = attributes.getValue("r");
+				column = (ref != null) ? columnIndex(ref) : column + 1;
+				type = attributes.getValue("t");
+				text.setLength(0);
+			} else if ("v".equals(localName) || "t".equals(localName)) {
+				inText = true;
+			}
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) {
+			if (inText) {
+				text.append(ch, start, length);
+			}
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) {
+			if ("v".equals(localName) || "t".equals(localName)) {
+				inText = false;
+			} else if ("c".equals(localName)) {
+				endCell();
+			}
+		}
+
+		private void endCell() {
+			if (text.length() == 0) {
+				return;
+			}
+
+			boolean numeric = (type == null) || "n".equals(type);
+
+			// first row for titles
+			if (row == 0) {
+				if ("s".equals(type)) {
+					data.setTitle(column, sharedString());
+				} else if ("inlineStr".equals(type) || "str".equals(type)) {
+					data.setTitle(column, text.toString());
+				}
+			} else if (numeric && column >= 0 && column < COLUMNS) {
+				data.column(column).add(row, number());
+			}
+		}
+
+		/**
+		 * @return Shared string whose index is the text of the cell.
+		 * @throws DataException
+		 *           If the index is not a number, or names no shared string.
+		 */
+		private String sharedString() {
+			try {
+				return strings.getEntryAt(Integer.parseInt(text.toString()));
+			} catch (NumberFormatException | IndexOutOfBoundsException e) {
+				throw new DataException(DataException.Reason.NOT_EXCEL,
+						"Not Excel File: bad shared string \"" + text + "\".", e);
+			}
+		}
+
+		/**
+		 * @return Number held as the text of the cell.
+		 * @throws DataException
+		 *           If the text is not a number.
+		 */
+		private double number() {
+			try {
+				return Double.parseDouble(text.toString());
+			} catch (NumberFormatException e) {
+				throw new DataException(DataException.Reason.NOT_EXCEL,
+						"Not Excel File: bad number \"" + text + "\".", e);
+			}
+		}
+
+		/**
+		 * @return Zero-based index of a row reference such as "12".
+		 * @throws DataException
+		 *           If the reference is not a number.
+		 */
+		private int rowIndex(String ref) {
+			try {
+				return Integer.parseInt(ref) - 1;
+			} catch (NumberFormatException e) {
+				throw new DataException(DataException.Reason.NOT_EXCEL,
+						"Not Excel File: bad row \"" + ref + "\".", e);
+			}
+		}
+
+		/**
+		 * @return Zero-based column of a cell reference such as "AB12".
+		 */
+		private int columnIndex(String ref) {
+			int letters = 26;
+			int index = 0;
+
+			for (int i = 0; i < ref.length(); i++) {
+				char c = ref.charAt(i);
+				if (c < 'A' || c > 'Z') {
+					break;
+				}
+				index = (index * letters) + (c - 'A' + 1);
+			}
+
+			return index - 1;
+		}
+	}
+}
@@ -0,0 +1,86 @@
+/**
+ * Computes the sums that make up the sample statistics of a block of points.
+ * Sums are taken about a shift point (x0, y0), usually the first point of the
+ * block, so that the sums of squares stay small and do not cancel badly when
+ * they are turned back into residual sums of squares.
+ *
+ * Two implementations exist: ScalarSumKernel, which runs on any JVM, and
+ * VectorSumKernel, which uses the jdk.incubator.vector module and is built
+ * separately from src-vector. Use SumKernel.Selector.get() to obtain the
+ * fastest one available.
+ */
+public interface SumKernel {
+
+	// Ordering of the sums written out by a kernel
+	int DX = 0; // sum of (x - x0)
+	int DY = 1; // sum of (y - y0)
+	int DXX = 2; // sum of (x - x0)^2
+	int DYY = 3; // sum of (y - y0)^2
+	int W = 4; // sum of w
+	int WDX = 5; // sum of w(x - x0)
+	int WDY = 6; // sum of w(y - y0)
+	int WDXX = 7; // sum of w(x - x0)^2
+	int WDXY = 8; // sum of w(x - x0)(y - y0)
+	int SIZE = 9;
+
+	/**
+	 * Writes the sums of a block of points into out.
+	 * 
+	 * @param x
+	 *          Array of predictor values.
+	 * @param y
+	 *          Array of response values.
+	 * @param w
+	 *          Array of weights, or null to weight every point with unity.
+	 * @param from
+	 *          First index of the block (inclusive).
+	 * @param to
+	 *          Last index of the block (exclusive).
+	 * @param x0
+	 *          Value subtracted from every x.
+	 * @param y0
+	 *          Value subtracted from every y.
+	 * @param out
+	 *          Array of at least SIZE elements to write into.
+	 */
+	void sums(double[] x, double[] y, double[] w, int from, int to, double x0,
+			double y0, double[] out);
+
+	/**
+	 * Picks a kernel at runtime. The vector kernel is used when it has been
+	 * built and the jdk.incubator.vector module has been added to the JVM
+	 * (with --add-modules jdk.incubator.vector), unless the system property
+	 * linreg.simd is set to false.
+	 */
+	class Selector {
+
+		private static final SumKernel KERNEL = select();
+
+		private Selector() {
+		}
+
+		/**
+		 * @return The fastest kernel available on this JVM.
+		 */
+		public static SumKernel get() {
+			return KERNEL;
+		}
+
+		private static SumKernel select() {
+			if (!Boolean.parseBoolean(System.getProperty("linreg.simd", "true"))) {
+				return new ScalarSumKernel();
+			}
+
+			try {
+				// Fails if the incubator module was not added to the JVM, or the
+				// vector kernel was not built
+				Class.forName("jdk.incubator.vector.DoubleVector");
+
+				return (SumKernel) Class.forName("VectorSumKernel")
+						.getDeclaredConstructor().newInstance();
+			} catch (ReflectiveOperationException | LinkageError e) {
+				return new ScalarSumKernel();
+			}
+		}
+	}
+}
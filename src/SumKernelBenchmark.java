@@ -0,0 +1,188 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares the speed of WLR's accumulation of its sums, as the fit runs it,
+ * on ScalarSumKernel and, when available, VectorSumKernel. Each kernel is
+ * timed through StatsAccumulator.add, which feeds it the points in chunks and
+ * merges each chunk in, so the times include the merges the kernel speeds
+ * up alongside. The three loops WLR used to run, and the whole of fitWLR on
+ * a single thread with the kernel selected, are timed as well.
+ *
+ * Build VectorSumKernel from src-vector, then run it with and without the
+ * vector module to see both kernels:
+ *
+ * java --add-modules jdk.incubator.vector SumKernelBenchmark [points] [runs]
+ */
+public class SumKernelBenchmark {
+
+	// Keeps the JIT from discarding the results of the timed loops
+	static double sink;
+
+	// Statistics written by StatsAccumulator.writeStats
+	private static final int STAT_SIZE = 7;
+
+	/**
+	 * @param args
+	 *          Optional number of points and number of timed runs.
+	 */
+	public static void main(String[] args) {
+		int sampleSize = (args.length > 0) ? Integer.parseInt(args[0]) : 1 << 22;
+		int runs = (args.length > 1) ? Integer.parseInt(args[1]) : 25;
+
+		double[] x = new double[sampleSize];
+		double[] y = new double[sampleSize];
+		double[] w = new double[sampleSize];
+
+		Random random = new Random(42);
+		for (int i = 0; i < sampleSize; i++) {
+			x[i] = random.nextDouble() * 100;
+			y[i] = (3 * x[i]) + random.nextGaussian();
+			w[i] = random.nextDouble();
+		}
+
+		double baseline = timeLegacy(x, y, w, runs);
+		System.out.printf("%-20s %10.3f ms%n", "Math.pow loops", baseline);
+
+		SumKernel scalar = new ScalarSumKernel();
+		report("ScalarSumKernel", time(scalar, x, y, w, runs), baseline);
+
+		SumKernel selected = SumKernel.Selector.get();
+		if (selected instanceof ScalarSumKernel) {
+			System.out.println("VectorSumKernel not available; build it from "
+					+ "src-vector and run with --add-modules jdk.incubator.vector");
+		} else {
+			report(selected.getClass().getName(), time(selected, x, y, w, runs),
+					baseline);
+		}
+
+		report("fitWLR", timeFit(x, y, w, runs), baseline);
+	}
+
+	/**
+	 * @return Median time to accumulate the data with a kernel, in
+	 *         milliseconds.
+	 */
+	private static double time(SumKernel kernel, double[] x, double[] y,
+			double[] w, int runs) {
+
+		double[] out = new double[STAT_SIZE];
+		double[] times = new double[runs];
+
+		// Warm up so that the timed runs use compiled code
+		int warmup = 10;
+		for (int run = -warmup; run < runs; run++) {
+			long start = System.nanoTime();
+			StatsAccumulator accumulator = new StatsAccumulator();
+			accumulator.add(kernel, x, y, w, 0, x.length);
+			accumulator.writeStats(out);
+			long end = System.nanoTime();
+
+			sink += out[0];
+			if (run >= 0) {
+				times[run] = (end - start) / 1e6;
+			}
+		}
+
+		Arrays.sort(times);
+		return times[runs / 2];
+	}
+
+	/**
+	 * @return Median time of fitWLR on a single thread, in milliseconds.
+	 */
+	private static double timeFit(double[] x, double[] y, double[] w, int runs) {
+		LinearRegression regression = new LinearRegression();
+		regression.setParallelism(1);
+
+		double[][] dataset = { x, y };
+		double[] out = new double[regression.statSize];
+		double[] times = new double[runs];
+
+		int warmup = 10;
+		for (int run = -warmup; run < runs; run++) {
+			long start = System.nanoTime();
+			regression.fitWLR(dataset, w, out);
+			long end = System.nanoTime();
+
+			sink += out[0];
+			if (run >= 0) {
+				times[run] = (end - start) / 1e6;
+			}
+		}
+
+		Arrays.sort(times);
+		return times[runs / 2];
+	}
+
+	/**
+	 * @return Median time of the original WLR loops, in milliseconds.
+	 */
+	private static double timeLegacy(double[] x, double[] y, double[] w,
+			int runs) {
+
+		double[] out = new double[SumKernel.SIZE];
+		double[] times = new double[runs];
+
+		int warmup = 10;
+		for (int run = -warmup; run < runs; run++) {
+			long start = System.nanoTime();
+			legacySums(x, y, w, out);
+			long end = System.nanoTime();
+
+			sink += out[SumKernel.WDXY];
+			if (run >= 0) {
+				times[run] = (end - start) / 1e6;
+			}
+		}
+
+		Arrays.sort(times);
+		return times[runs / 2];
+	}
+
+	/**
+	 * The three passes of WLR before it was moved onto SumKernel.
+	 */
+	private static void legacySums(double[] x, double[] y, double[] w,
+			double[] out) {
+		int squared = 2;
+		double xsum = 0, ysum = 0;
+		double xresidsqrsum = 0, yresidsqrsum = 0;
+		double xwsum = 0, ywsum = 0, wsum = 0;
+		double xwsqrsum = 0, xywsum = 0;
+
+		for (int i = 0; i < x.length; i++) {
+			xsum += x[i];
+			ysum += y[i];
+		}
+
+		double xbar = xsum / x.length;
+		double ybar = ysum / x.length;
+
+		for (int i = 0; i < x.length; i++) {
+			xresidsqrsum += Math.pow(x[i] - xbar, squared);
+			yresidsqrsum += Math.pow(y[i] - ybar, squared);
+		}
+
+		for (int i = 0; i < x.length; i++) {
+			xwsum += (x[i] * w[i]);
+			ywsum += (y[i] * w[i]);
+			wsum += w[i];
+			xwsqrsum += (Math.pow(x[i], squared) * w[i]);
+			xywsum += (x[i] * y[i] * w[i]);
+		}
+
+		out[SumKernel.DXX] = xresidsqrsum;
+		out[SumKernel.DYY] = yresidsqrsum;
+		out[SumKernel.W] = wsum;
+		out[SumKernel.WDX] = xwsum;
+		out[SumKernel.WDY] = ywsum;
+		out[SumKernel.WDXX] = xwsqrsum;
+		out[SumKernel.WDXY] = xywsum;
+	}
+
+	private static void report(String name, double millis, double baseline) {
+		System.out.printf("%-20s %10.3f ms  (%.2fx)%n", name, millis, baseline
+				/ millis);
+	}
+}